@@ -0,0 +1,83 @@
+package com.kisline.processors.bitcoin;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+// CSV -> HistoryBatch 까지의 parsing 비용 (output 없음)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class CsvParseBenchmark {
+
+  @Param({"10000", "1000000", "10000000"})
+  private int rows;
+
+  @Param({"4"})
+  private int parallelism;
+
+  private byte[] csv;
+  private ForkJoinPool pool;
+
+  @Setup
+  public void setup() throws IOException {
+    csv = SyntheticCsv.generate(rows);
+    pool = new ForkJoinPool(parallelism);
+  }
+
+  @TearDown
+  public void tearDown() {
+    pool.shutdownNow();
+  }
+
+  @Benchmark
+  public long parse() throws IOException {
+    final BitstampCsvParser parser = new BitstampCsvParser(new ByteArrayInputStream(csv));
+    final HistoryBatch batch = HistoryBatch.allocate(HistoryBatch.DEFAULT_CAPACITY, false);
+    long valid = 0;
+    BitstampCsvParser.Row row;
+    while ((row = parser.next()) != BitstampCsvParser.Row.END) {
+      if (row == BitstampCsvParser.Row.VALID) {
+        batch.add(parser);
+        if (batch.isFull()) {
+          valid += batch.size();
+          batch.clear();
+        }
+      }
+    }
+    return valid + batch.size();
+  }
+
+  @Benchmark
+  public long parseParallel(final Blackhole blackhole) throws IOException, SQLException {
+    return new ParallelCsvReader(pool, parallelism, null, Long.MIN_VALUE, null)
+        .read(
+            new ByteArrayInputStream(csv),
+            new BatchHandler() {
+
+              @Override
+              public void handle(final HistoryBatch batch) {
+                blackhole.consume(batch.size());
+              }
+            });
+  }
+}
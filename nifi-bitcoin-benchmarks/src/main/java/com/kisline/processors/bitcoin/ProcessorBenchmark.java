@@ -0,0 +1,138 @@
+package com.kisline.processors.bitcoin;
+
+import com.kisline.dbcp.DBCPConfigUtil;
+import com.kisline.dbcp.StandardHikariCPService;
+import org.apache.derby.drda.NetworkServerControl;
+import org.apache.derby.jdbc.ClientDataSource;
+import org.apache.nifi.util.TestRunner;
+import org.apache.nifi.util.TestRunners;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.PrintWriter;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+// TestRunner 로 onTrigger 한 번 (CSV FlowFile 하나 -> output) 의 전체 비용. DB 는 Derby network server
+// mock session 은 content 를 memory 에 들고 있으므로 10M row 는 heap 을 넉넉히 줘야 한다.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class ProcessorBenchmark {
+
+  private static final String DB_URL = "jdbc:derby://localhost:1527/benchmark;create=true";
+
+  @Param({"10000", "100000", "1000000", "10000000"})
+  private int rows;
+
+  @Param({"JSON", "XML", "DB", "ALL"})
+  private String output;
+
+  @Param({"BATCH"})
+  private String dbLoadStrategy;
+
+  private NetworkServerControl derby;
+  private Path input;
+  private TestRunner testRunner;
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    input = SyntheticCsv.writeTempFile(rows);
+
+    derby = new NetworkServerControl();
+    derby.start(new PrintWriter(System.out));
+    waitForDerby();
+    try (final Connection connection = openConnection();
+        final Statement stmt = connection.createStatement()) {
+      stmt.execute(
+          "create table bitcoin_history (history_time timestamp, open_price double, high double, low double, closed_price double, btc_volume double, usd_volume double, weighted_price double)");
+    } catch (SQLException e) {
+      // X0Y32 : 이전 실행에서 만든 table 이 이미 있음
+      if (!"X0Y32".equals(e.getSQLState())) {
+        throw e;
+      }
+    }
+
+    testRunner = TestRunners.newTestRunner(BitcoinHistoryProcessor.class);
+    final StandardHikariCPService service = new StandardHikariCPService();
+    testRunner.addControllerService("dbcp", service);
+    testRunner.setProperty(
+        service, DBCPConfigUtil.DATASOURCE_CLASSNAME, ClientDataSource.class.getName());
+    testRunner.setProperty(service, DBCPConfigUtil.USERNAME, "test");
+    testRunner.setProperty(service, DBCPConfigUtil.PASSWORD, "test");
+    testRunner.setProperty(service, DBCPConfigUtil.AUTO_COMMIT, "true");
+    testRunner.setProperty(service, "databaseName", "benchmark");
+    testRunner.setProperty(service, "createDatabase", "create");
+    testRunner.setProperty(service, "serverName", "localhost");
+    testRunner.setProperty(service, "portNumber", "1527");
+    testRunner.enableControllerService(service);
+
+    testRunner.setProperty(ConfigUtil.DS_PROP, "dbcp");
+    testRunner.setProperty(ConfigUtil.OUTPUT, output);
+    testRunner.setProperty(ConfigUtil.DB_LOAD_STRATEGY, dbLoadStrategy);
+    // record 마다 FlowFile 을 만들면 mock session 이 감당하지 못하므로 큰 FlowFile 로 묶는다.
+    testRunner.setProperty(ConfigUtil.OUTPUT_GRANULARITY, "BATCH");
+    testRunner.setProperty(ConfigUtil.RECORDS_PER_FLOWFILE, "100000");
+
+    // onScheduled 만 실행 (queue 가 비어 있음)
+    testRunner.run(1, false, true);
+  }
+
+  @Setup(Level.Invocation)
+  public void prepare() throws Exception {
+    try (final Connection connection = openConnection();
+        final Statement stmt = connection.createStatement()) {
+      stmt.executeUpdate("delete from bitcoin_history");
+    }
+    testRunner.clearTransferState();
+    testRunner.enqueue(input);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    testRunner.run(1, true, false);
+    testRunner.shutdown();
+    derby.shutdown();
+  }
+
+  @Benchmark
+  public void onTrigger() {
+    testRunner.run(1, false, false);
+  }
+
+  private void waitForDerby() throws Exception {
+    for (int i = 0; ; i++) {
+      try {
+        derby.ping();
+        return;
+      } catch (Exception e) {
+        if (i == 50) {
+          throw e;
+        }
+        Thread.sleep(100);
+      }
+    }
+  }
+
+  private static Connection openConnection() throws SQLException {
+    return DriverManager.getConnection(DB_URL, "test", "test");
+  }
+}
@@ -0,0 +1,170 @@
+package com.kisline.processors.bitcoin;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.kisline.processors.bitcoin.com.kisline.processors.base.model.BitcoinHistory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+
+// record 하나당 비용. 한 번 호출에 batch 하나(1024 row)를 처리하고 결과는 row 당 시간으로 나온다.
+// model / Jackson ObjectMapper / JAXB 는 예전 record 단위 경로, sink 는 지금의 streaming 경로
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RecordBenchmark {
+
+  private static final int ROWS = HistoryBatch.DEFAULT_CAPACITY;
+
+  private final ByteArrayOutputStream out = new ByteArrayOutputStream(1024 * 1024);
+  private final ZoneId zone = ZoneId.systemDefault();
+
+  private HistoryBatch batch;
+  private BitcoinHistory[] models;
+  private ObjectMapper mapper;
+  private Marshaller marshaller;
+  private JsonSink jsonSink;
+  private XmlSink xmlSink;
+  private TimestampFormatter timestampFormatter;
+
+  @Setup
+  public void setup() throws IOException, JAXBException {
+    // NaN row 를 감안해서 넉넉히 만든 뒤 batch 하나만큼 채운다.
+    final BitstampCsvParser parser =
+        new BitstampCsvParser(new ByteArrayInputStream(SyntheticCsv.generate(ROWS * 2)));
+    batch = HistoryBatch.allocate(ROWS, false);
+    BitstampCsvParser.Row row;
+    while (!batch.isFull() && (row = parser.next()) != BitstampCsvParser.Row.END) {
+      if (row == BitstampCsvParser.Row.VALID) {
+        batch.add(parser);
+      }
+    }
+
+    models = new BitcoinHistory[batch.size()];
+    for (int i = 0; i < models.length; i++) {
+      models[i] = batch.toModel(i, zone);
+    }
+
+    // processor 와 같은 설정
+    mapper = new ObjectMapper();
+    mapper.registerModule(new JavaTimeModule());
+    mapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    marshaller = JAXBContext.newInstance(BitcoinHistory.class).createMarshaller();
+    marshaller.setProperty(Marshaller.JAXB_FRAGMENT, true);
+
+    // session 없이 encoder 부분만 쓴다.
+    final OutputSettings settings =
+        new OutputSettings(
+            OutputSettings.Granularity.FLOWFILE,
+            Integer.MAX_VALUE,
+            3600,
+            OutputSettings.JsonFormat.ARRAY,
+            zone,
+            OutputSettings.Compression.NONE,
+            1,
+            0,
+            null);
+    jsonSink =
+        new JsonSink(
+            null, null, settings, "bench", FlowFileSink.newBuffer(), mapper.getFactory());
+    xmlSink = new XmlSink(null, null, settings, "bench", FlowFileSink.newBuffer());
+    timestampFormatter = new TimestampFormatter(zone, TimestampFormatter.Style.OFFSET);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ROWS)
+  public void createModel(final Blackhole blackhole) {
+    for (int i = 0; i < batch.size(); i++) {
+      blackhole.consume(batch.toModel(i, zone));
+    }
+  }
+
+  // timestamp 문자열만 : 예전 ZonedDateTime + DateTimeFormatter 경로와 TimestampFormatter
+  @Benchmark
+  @OperationsPerInvocation(ROWS)
+  public void formatZonedDateTime(final Blackhole blackhole) {
+    for (int i = 0; i < batch.size(); i++) {
+      blackhole.consume(
+          DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(
+              ZonedDateTime.ofInstant(Instant.ofEpochSecond(batch.getTimestamp(i)), zone)));
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ROWS)
+  public void formatTimestamp(final Blackhole blackhole) {
+    for (int i = 0; i < batch.size(); i++) {
+      blackhole.consume(timestampFormatter.format(batch.getTimestamp(i)));
+    }
+    blackhole.consume(timestampFormatter.getBuffer());
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ROWS)
+  public int jacksonWriteValue() throws IOException {
+    out.reset();
+    for (final BitcoinHistory model : models) {
+      mapper.writeValue(out, model);
+    }
+    return out.size();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ROWS)
+  public int jaxbMarshal() throws JAXBException {
+    out.reset();
+    for (final BitcoinHistory model : models) {
+      marshaller.marshal(model, out);
+    }
+    return out.size();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ROWS)
+  public int jsonSink() throws IOException {
+    return encode(jsonSink);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ROWS)
+  public int xmlSink() throws IOException {
+    return encode(xmlSink);
+  }
+
+  private int encode(final FlowFileSink sink) throws IOException {
+    out.reset();
+    sink.startDocument(out, false);
+    for (int i = 0; i < batch.size(); i++) {
+      sink.writeRecord(batch, i);
+    }
+    sink.endDocument();
+    sink.flushEncoder();
+    return out.size();
+  }
+}
@@ -0,0 +1,80 @@
+package com.kisline.processors.bitcoin;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+// benchmark 용 Bitstamp 형식 CSV. 1분 간격, 약 10% 는 NaN (거래 없는 구간) row
+final class SyntheticCsv {
+
+  static final String HEADER =
+      "Timestamp,Open,High,Low,Close,Volume_(BTC),Volume_(Currency),Weighted_Price\n";
+
+  private static final long START = 1325317920L;
+
+  private SyntheticCsv() {}
+
+  static byte[] generate(final int rows) throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream(rows * 72 + HEADER.length());
+    write(out, rows);
+    return out.toByteArray();
+  }
+
+  static Path writeTempFile(final int rows) throws IOException {
+    final Path file = Files.createTempFile("bitstamp-" + rows + "-", ".csv");
+    file.toFile().deleteOnExit();
+    try (final OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+      write(out, rows);
+    }
+    return file;
+  }
+
+  private static void write(final OutputStream out, final int rows) throws IOException {
+    // 매번 같은 data 가 나오도록 seed 고정
+    final Random random = new Random(42);
+    final StringBuilder line = new StringBuilder(128);
+    double price = 4.39;
+
+    out.write(HEADER.getBytes(StandardCharsets.US_ASCII));
+    for (int i = 0; i < rows; i++) {
+      line.setLength(0);
+      line.append(START + i * 60L);
+      if (random.nextInt(10) == 0) {
+        line.append(",NaN,NaN,NaN,NaN,NaN,NaN,NaN\n");
+      } else {
+        final double open = price;
+        price = Math.max(0.01, price * (1 + (random.nextDouble() - 0.5) * 0.002));
+        final double high = Math.max(open, price) * (1 + random.nextDouble() * 0.001);
+        final double low = Math.min(open, price) * (1 - random.nextDouble() * 0.001);
+        final double btc = random.nextDouble() * 10;
+        final double weighted = (open + price) / 2;
+        line.append(',')
+            .append(round(open))
+            .append(',')
+            .append(round(high))
+            .append(',')
+            .append(round(low))
+            .append(',')
+            .append(round(price))
+            .append(',')
+            .append(round(btc))
+            .append(',')
+            .append(round(btc * weighted))
+            .append(',')
+            .append(round(weighted))
+            .append('\n');
+      }
+      out.write(line.toString().getBytes(StandardCharsets.US_ASCII));
+    }
+  }
+
+  // 실제 export 처럼 소수점 8 자리까지
+  private static double round(final double value) {
+    return Math.round(value * 1e8) / 1e8;
+  }
+}
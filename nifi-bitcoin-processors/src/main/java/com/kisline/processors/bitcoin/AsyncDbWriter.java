@@ -0,0 +1,153 @@
+package com.kisline.processors.bitcoin;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+// DbWriter 를 별도 writer thread 에서 돌린다. onTrigger thread 는 batch 복사본을 queue 에 넣고 바로 다음 parsing 으로 간다.
+// queue 가 차면 put 에서 기다린다. (backpressure)
+// finish 는 writer 가 commit 할 때까지 기다리므로 FlowFile 은 DB 에 확정된 뒤에만 지워진다.
+final class AsyncDbWriter implements DbSink {
+
+  // 더 보낼 batch 가 없다는 표시
+  private static final HistoryBatch END = HistoryBatch.allocate(0, false);
+
+  private final BlockingQueue<HistoryBatch> queue;
+  // writer 가 다 쓴 batch 를 돌려받아 다시 복사에 쓴다.
+  private final BlockingQueue<HistoryBatch> free;
+  private final boolean offHeap;
+  private final Future<Integer> result;
+
+  private volatile boolean aborted;
+  // writer thread 에서 난 DB 오류
+  private volatile SQLException failure;
+  private boolean ended;
+
+  AsyncDbWriter(
+      final ExecutorService executor,
+      final DbWriter dbWriter,
+      final int queueSize,
+      final boolean offHeap) {
+    this.queue = new ArrayBlockingQueue<>(queueSize);
+    this.free = new ArrayBlockingQueue<>(queueSize + 1);
+    this.offHeap = offHeap;
+    try {
+      this.result = executor.submit(write(dbWriter));
+    } catch (RuntimeException e) {
+      // writer thread 를 띄우지 못함 (pool 이 shutdown 됨 등)
+      dbWriter.rollback();
+      throw e;
+    }
+  }
+
+  @Override
+  public void handle(final HistoryBatch batch) throws IOException, SQLException {
+    if (batch.isEmpty()) {
+      return;
+    }
+    if (failure != null) {
+      // writer 가 이미 실패했으면 더 parsing 하지 않도록 바로 알린다.
+      throw failure;
+    }
+
+    HistoryBatch copy = free.poll();
+    if (copy == null || copy.capacity() < batch.size()) {
+      copy = HistoryBatch.allocate(Math.max(batch.size(), HistoryBatch.DEFAULT_CAPACITY), offHeap);
+    }
+    copy.addAll(batch);
+    put(copy);
+  }
+
+  @Override
+  public int finish() throws SQLException {
+    end();
+    return await();
+  }
+
+  // writer 가 rollback 을 마칠 때까지 기다린다. (그 전에 connection 을 돌려주면 안 됨)
+  @Override
+  public void rollback() {
+    aborted = true;
+    queue.clear();
+    try {
+      end();
+      await();
+    } catch (SQLException e) {
+      // 이미 실패한 상황이므로 원래 예외를 가리지 않도록 무시한다.
+    }
+  }
+
+  private Callable<Integer> write(final DbWriter dbWriter) {
+    return new Callable<Integer>() {
+
+      @Override
+      public Integer call() throws Exception {
+        HistoryBatch batch;
+        // 실패해도 END 까지 queue 를 비워서 put 에서 기다리는 onTrigger thread 를 풀어준다.
+        while ((batch = queue.take()) != END) {
+          if (failure == null && !aborted) {
+            try {
+              dbWriter.add(batch);
+            } catch (SQLException e) {
+              failure = e;
+              dbWriter.rollback();
+            }
+          }
+          batch.clear();
+          free.offer(batch);
+        }
+
+        if (failure != null) {
+          throw failure;
+        }
+        if (aborted) {
+          dbWriter.rollback();
+          return 0;
+        }
+        return dbWriter.finish();
+      }
+    };
+  }
+
+  private void put(final HistoryBatch batch) throws IOException {
+    try {
+      queue.put(batch);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for the DB writer", e);
+    }
+  }
+
+  private void end() throws SQLException {
+    if (ended) {
+      return;
+    }
+    ended = true;
+    try {
+      queue.put(END);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      result.cancel(true);
+      throw new SQLException("Interrupted while waiting for the DB writer", e);
+    }
+  }
+
+  private int await() throws SQLException {
+    try {
+      return result.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SQLException("Interrupted while waiting for the DB writer", e);
+    } catch (ExecutionException e) {
+      final Throwable cause = e.getCause();
+      throw cause instanceof SQLException
+          ? (SQLException) cause
+          : new SQLException("DB writer failed", cause);
+    }
+  }
+}
@@ -0,0 +1,211 @@
+package com.kisline.processors.bitcoin;
+
+import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.processor.ProcessSession;
+import org.apache.nifi.processor.Relationship;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+
+// output FlowFile 하나를 Avro object container file 하나로 쓴다. (schema 포함, codec null)
+// schema 가 고정이라 Avro library 없이 직접 encoding 한다.
+// timestamp 는 epoch millis (long, timestamp-millis), 값은 IEEE double 8 byte 그대로 쓴다.
+// Indicator Window 를 설정하면 indicator field 가 붙은 schema 를 쓴다.
+class AvroSink extends FlowFileSink {
+
+  private static final String FIELDS =
+      "{\"type\":\"record\",\"name\":\"BitcoinHistory\","
+          + "\"namespace\":\"com.kisline.processors.base.model\",\"fields\":["
+          + "{\"name\":\"timestamp\","
+          + "\"type\":{\"type\":\"long\",\"logicalType\":\"timestamp-millis\"}},"
+          + "{\"name\":\"open\",\"type\":\"double\"},"
+          + "{\"name\":\"close\",\"type\":\"double\"},"
+          + "{\"name\":\"high\",\"type\":\"double\"},"
+          + "{\"name\":\"low\",\"type\":\"double\"},"
+          + "{\"name\":\"btcVolume\",\"type\":\"double\"},"
+          + "{\"name\":\"weightedPrice\",\"type\":\"double\"},"
+          + "{\"name\":\"usdVolume\",\"type\":\"double\"}";
+
+  static final String SCHEMA = FIELDS + "]}";
+
+  static final String INDICATOR_SCHEMA =
+      FIELDS
+          + ",{\"name\":\"sma\",\"type\":\"double\"},"
+          + "{\"name\":\"ema\",\"type\":\"double\"},"
+          + "{\"name\":\"vwap\",\"type\":\"double\"},"
+          + "{\"name\":\"volatility\",\"type\":\"double\"}]}";
+
+  private static final byte[] MAGIC = {'O', 'b', 'j', 1};
+  private static final int SYNC_SIZE = 16;
+  // 이 크기를 넘으면 block 을 닫는다.
+  private static final int BLOCK_SIZE = 64 * 1024;
+  // varint long 1 개 + double 11 개 (indicator 포함)
+  private static final int MAX_RECORD_SIZE = 10 + 11 * 8;
+
+  private final byte[] sync = new byte[SYNC_SIZE];
+  private final byte[] block = new byte[BLOCK_SIZE + MAX_RECORD_SIZE];
+  private final boolean indicators;
+  private final String schema;
+  private int blockSize;
+  private int blockRecords;
+  private OutputStream out;
+
+  AvroSink(
+      final ProcessSession session,
+      final FlowFile parent,
+      final OutputSettings settings,
+      final String baseName,
+      final ByteArrayOutputStream buffer) {
+    super(session, parent, settings, baseName, buffer);
+    this.indicators = settings.hasIndicators();
+    this.schema = indicators ? INDICATOR_SCHEMA : SCHEMA;
+  }
+
+  // container file 하나에 record 하나면 schema header 와 sync marker 가 record 보다 크다.
+  // -> RECORD 는 BATCH (Records Per FlowFile) 로 쓴다.
+  @Override
+  protected OutputSettings.Granularity getGranularity() {
+    final OutputSettings.Granularity granularity = super.getGranularity();
+    return granularity == OutputSettings.Granularity.RECORD
+        ? OutputSettings.Granularity.BATCH
+        : granularity;
+  }
+
+  @Override
+  protected Relationship getRelationship() {
+    return ConfigUtil.AVRO;
+  }
+
+  @Override
+  protected String getExtension() {
+    return "avro";
+  }
+
+  @Override
+  protected String getMimeType() {
+    return ConfigUtil.AVRO_MIME_TYPE;
+  }
+
+  @Override
+  protected String getRecordCountAttribute() {
+    return ConfigUtil.AVRO_RECORDS;
+  }
+
+  // block 단위 codec 이 따로 있으므로 file 전체를 압축하지 않는다.
+  @Override
+  protected boolean isCompressible() {
+    return false;
+  }
+
+  @Override
+  protected void startDocument(final OutputStream out, final boolean single) throws IOException {
+    this.out = out;
+    // sync marker 는 file 마다 새로 만든다.
+    ThreadLocalRandom.current().nextBytes(sync);
+
+    final byte[] header = new byte[256 + schema.length()];
+    int pos = 0;
+    System.arraycopy(MAGIC, 0, header, pos, MAGIC.length);
+    pos += MAGIC.length;
+    // metadata map : block 하나 (2 entry) + 끝 (0)
+    pos = writeLong(header, pos, 2);
+    pos = writeString(header, pos, "avro.schema");
+    pos = writeString(header, pos, schema);
+    pos = writeString(header, pos, "avro.codec");
+    pos = writeString(header, pos, "null");
+    pos = writeLong(header, pos, 0);
+    out.write(header, 0, pos);
+    out.write(sync);
+  }
+
+  @Override
+  protected void writeRecord(final HistoryBatch batch, final int i) throws IOException {
+    int pos = writeLong(block, blockSize, batch.getTimestamp(i) * 1000);
+    pos = writeDouble(block, pos, batch.getOpen(i));
+    pos = writeDouble(block, pos, batch.getClose(i));
+    pos = writeDouble(block, pos, batch.getHigh(i));
+    pos = writeDouble(block, pos, batch.getLow(i));
+    pos = writeDouble(block, pos, batch.getBtcVolume(i));
+    pos = writeDouble(block, pos, batch.getWeightedPrice(i));
+    pos = writeDouble(block, pos, batch.getUsdVolume(i));
+    if (indicators) {
+      pos = writeDouble(block, pos, batch.getSma(i));
+      pos = writeDouble(block, pos, batch.getEma(i));
+      pos = writeDouble(block, pos, batch.getVwap(i));
+      pos = writeDouble(block, pos, batch.getVolatility(i));
+    }
+    blockSize = pos;
+    blockRecords++;
+
+    if (blockSize >= BLOCK_SIZE) {
+      writeBlock();
+    }
+  }
+
+  @Override
+  protected void endDocument() throws IOException {
+    writeBlock();
+    out = null;
+  }
+
+  @Override
+  protected void flushEncoder() throws IOException {
+    if (out != null) {
+      writeBlock();
+    }
+  }
+
+  // block : record 수, byte 수, data, sync marker
+  private void writeBlock() throws IOException {
+    if (blockRecords == 0) {
+      return;
+    }
+
+    final byte[] prefix = new byte[20];
+    int pos = writeLong(prefix, 0, blockRecords);
+    pos = writeLong(prefix, pos, blockSize);
+    out.write(prefix, 0, pos);
+    out.write(block, 0, blockSize);
+    out.write(sync);
+    blockSize = 0;
+    blockRecords = 0;
+  }
+
+  private int writeString(final byte[] buf, final int pos, final String value) {
+    final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    final int start = writeLong(buf, pos, bytes.length);
+    System.arraycopy(bytes, 0, buf, start, bytes.length);
+    return start + bytes.length;
+  }
+
+  // zig-zag varint
+  static int writeLong(final byte[] buf, int pos, final long value) {
+    long n = (value << 1) ^ (value >> 63);
+    while ((n & ~0x7FL) != 0) {
+      buf[pos++] = (byte) ((n & 0x7F) | 0x80);
+      n >>>= 7;
+    }
+    buf[pos++] = (byte) n;
+    return pos;
+  }
+
+  // little endian IEEE 754
+  static int writeDouble(final byte[] buf, final int pos, final double value) {
+    final long bits = Double.doubleToRawLongBits(value);
+    for (int i = 0; i < 8; i++) {
+      buf[pos + i] = (byte) (bits >>> (i * 8));
+    }
+    return pos + 8;
+  }
+
+  @Override
+  void abort() {
+    super.abort();
+    blockSize = 0;
+    blockRecords = 0;
+    out = null;
+  }
+}
@@ -0,0 +1,42 @@
+package com.kisline.processors.bitcoin;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+// row 하나짜리 insert 를 JDBC batch 로 묶어서 보낸다. (모든 DB 에서 동작하는 기본 방식)
+class BatchDbWriter extends DbWriter {
+
+  BatchDbWriter(final PreparedStatement stmt, final int batchSize, final boolean commitPerBatch)
+      throws SQLException {
+    super(stmt, batchSize, commitPerBatch);
+  }
+
+  @Override
+  PreparedStatement prepare(final String table) throws SQLException {
+    return connection.prepareStatement(insertSql(table));
+  }
+
+  @Override
+  void addRow(final HistoryBatch batch, final int i) throws SQLException {
+    stmt.setTimestamp(1, new Timestamp(batch.getTimestamp(i) * 1000L));
+    stmt.setDouble(2, batch.getOpen(i));
+    stmt.setDouble(3, batch.getHigh(i));
+    stmt.setDouble(4, batch.getLow(i));
+    stmt.setDouble(5, batch.getClose(i));
+    stmt.setDouble(6, batch.getBtcVolume(i));
+    stmt.setDouble(7, batch.getUsdVolume(i));
+    stmt.setDouble(8, batch.getWeightedPrice(i));
+    stmt.addBatch();
+  }
+
+  @Override
+  int send() throws SQLException {
+    return countInserted(stmt.executeBatch(), 1);
+  }
+
+  @Override
+  void discard() throws SQLException {
+    stmt.clearBatch();
+  }
+}
@@ -0,0 +1,10 @@
+package com.kisline.processors.bitcoin;
+
+import java.io.IOException;
+import java.sql.SQLException;
+
+// parsing 한 batch 를 받아 처리하는 단계 (resampling, sink/DB 쓰기 등)
+// 호출한 쪽이 batch 를 재사용하므로 handle 이 끝난 뒤에는 batch 를 들고 있으면 안 된다.
+interface BatchHandler {
+  void handle(HistoryBatch batch) throws IOException, SQLException;
+}
@@ -16,44 +16,51 @@
  */
 package com.kisline.processors.bitcoin;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
-import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.fasterxml.jackson.core.JsonFactory;
 import com.kisline.dbcp.HikariCPService;
-import com.kisline.processors.bitcoin.com.kisline.processors.base.model.BitcoinHistory;
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVRecord;
 import org.apache.nifi.annotation.behavior.InputRequirement;
 import org.apache.nifi.annotation.behavior.InputRequirement.Requirement;
+import org.apache.nifi.annotation.behavior.Stateful;
 import org.apache.nifi.annotation.behavior.WritesAttribute;
 import org.apache.nifi.annotation.behavior.WritesAttributes;
 import org.apache.nifi.annotation.documentation.CapabilityDescription;
 import org.apache.nifi.annotation.documentation.Tags;
 import org.apache.nifi.annotation.lifecycle.OnScheduled;
+import org.apache.nifi.annotation.lifecycle.OnStopped;
 import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.components.state.Scope;
+import org.apache.nifi.components.state.StateManager;
+import org.apache.nifi.components.state.StateMap;
 import org.apache.nifi.flowfile.FlowFile;
 import org.apache.nifi.flowfile.attributes.CoreAttributes;
 import org.apache.nifi.processor.*;
 import org.apache.nifi.processor.exception.ProcessException;
 import org.apache.nifi.processor.io.InputStreamCallback;
-import org.apache.nifi.processor.io.OutputStreamCallback;
 
-import javax.xml.bind.JAXBContext;
-import javax.xml.bind.Marshaller;
 import java.io.*;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
-import java.sql.Timestamp;
-import java.time.Instant;
-import java.time.ZoneId;
-import java.time.ZonedDateTime;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
 
 @Tags({"Bitcoin", "NICE", "JSON", "XML", "CSV"})
 @CapabilityDescription("Process Bitcoin transactions into XML or JSON format or both")
@@ -64,19 +71,54 @@ import java.util.concurrent.atomic.AtomicReference;
   @WritesAttribute(
       attribute = ConfigUtil.XML_RECORDS,
       description = "Number of XML records created"),
-  @WritesAttribute(attribute = ConfigUtil.RECORDS_READ, description = "Number of CSV records read")
+  @WritesAttribute(
+      attribute = ConfigUtil.AVRO_RECORDS,
+      description = "Number of Avro records created"),
+  @WritesAttribute(
+      attribute = ConfigUtil.DB_RECORDS,
+      description = "Number of rows inserted into the DB (db only)"),
+  @WritesAttribute(
+      attribute = ConfigUtil.INVALID_RECORDS,
+      description = "Number of rows in the invalid CSV (invalid only)"),
+  @WritesAttribute(attribute = ConfigUtil.RECORDS_READ, description = "Number of CSV records read"),
+  @WritesAttribute(
+      attribute = ConfigUtil.ROWS_READ_ATTRIBUTE,
+      description = "Number of CSV rows read (failure and db)"),
+  @WritesAttribute(
+      attribute = ConfigUtil.ROWS_VALID_ATTRIBUTE,
+      description = "Number of CSV rows with all values (failure and db)"),
+  @WritesAttribute(
+      attribute = ConfigUtil.ROWS_INVALID_ATTRIBUTE,
+      description = "Number of NaN or malformed CSV rows (failure and db)"),
+  @WritesAttribute(
+      attribute = ConfigUtil.ROWS_PER_SECOND_ATTRIBUTE,
+      description = "CSV rows read per second (failure and db)"),
+  @WritesAttribute(
+      attribute = ConfigUtil.PARSE_MILLIS_ATTRIBUTE,
+      description = "Time spent parsing CSV in milliseconds (failure and db)"),
+  @WritesAttribute(
+      attribute = ConfigUtil.SERIALIZE_MILLIS_ATTRIBUTE,
+      description = "Time spent writing JSON, XML and Avro in milliseconds (failure and db)"),
+  @WritesAttribute(
+      attribute = ConfigUtil.DB_MILLIS_ATTRIBUTE,
+      description = "Time spent writing to the DB in milliseconds (failure and db)")
 })
+@Stateful(
+    scopes = Scope.CLUSTER,
+    description =
+        "With Incremental Load, the last loaded Timestamp (epoch seconds) is stored per Watermark Key "
+            + "and rows at or below it are skipped")
 @InputRequirement(Requirement.INPUT_REQUIRED) // InputRequirment -> Input이 필요하다는 의미
 public class BitcoinHistoryProcessor extends AbstractProcessor {
 
-  // multi thread 에서 변수가 보호되어야 하므로 private로 선언
-  private static ObjectMapper mapper;
-  private AtomicReference<Marshaller> marshaller = new AtomicReference<>();
+  // JsonSink 마다 generator 를 만든다. (thread safe)
+  private static final JsonFactory jsonFactory = new JsonFactory();
 
   private enum Output {
     ALL,
     JSON,
     XML,
+    AVRO,
     DB
   };
 
@@ -86,27 +128,43 @@ public class BitcoinHistoryProcessor extends AbstractProcessor {
    */
   private AtomicReference<Output> output = new AtomicReference<>();
 
-  private AtomicReference<PreparedStatement> stmt = new AtomicReference<>();
-
-  @Override
-  protected void init(final ProcessorInitializationContext context) {
-    mapper = new ObjectMapper();
-    mapper.registerModule(new JavaTimeModule());
-    // 중요
-    mapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
-
-    try {
-      // volatile
-      JAXBContext jaxb = JAXBContext.newInstance(BitcoinHistory.class);
-      marshaller.set(jaxb.createMarshaller());
-    } catch (Exception e) {
-      // nifi 에서 이렇게 로그를 남겨야 캐치가 좋음
-      // 많은 concurrency task를 함께 구동함.
-      // getlogger 가 좋은 점 : 편하다. component id 를 가지고 있다. processor 마다 id 있음, 여러개를 사용하기
-      // 때문에 에러 추적이 용이함.
-      getLogger().error("Could not create JAXB context", e);
-    }
-  }
+  // task 마다 자기 connection 과 statement 를 쓴다. 놀고 있는 statement 는 여기 보관했다가 다음 task 가 재사용한다.
+  private final BlockingQueue<PreparedStatement> statements = new LinkedBlockingQueue<>();
+  private AtomicReference<HikariCPService> dbcpService = new AtomicReference<>();
+  private AtomicReference<OutputSettings> outputSettings = new AtomicReference<>();
+  private AtomicInteger batchSize = new AtomicInteger();
+  private AtomicBoolean commitPerBatch = new AtomicBoolean();
+  private AtomicBoolean bulkLoad = new AtomicBoolean();
+  // 중복 처리 모드가 INSERT 면 null. 최근에 DB 에 들어간 timestamp 를 task 간에 공유한다.
+  private AtomicReference<TimestampCache> timestampCache = new AtomicReference<>();
+  private AtomicBoolean upsert = new AtomicBoolean();
+  // Async DB Writes 일 때 DB 쓰기를 맡는 thread (아니면 null)
+  private AtomicReference<ExecutorService> dbWriterPool = new AtomicReference<>();
+  private AtomicInteger dbQueueSize = new AtomicInteger();
+  // parsing 한 row 를 담는 column batch 도 task 간에 재사용한다.
+  private final BlockingQueue<HistoryBatch> batches = new LinkedBlockingQueue<>();
+  private AtomicBoolean offHeapBatches = new AtomicBoolean();
+  // 큰 FlowFile 을 chunk 로 나눠 parsing 할 때 쓰는 pool. (Parse Parallelism 이 1 이면 null)
+  private AtomicReference<ForkJoinPool> parsePool = new AtomicReference<>();
+  private AtomicInteger parseParallelism = new AtomicInteger();
+  private AtomicLong parallelMinSize = new AtomicLong();
+  private AtomicBoolean incrementalLoad = new AtomicBoolean();
+  // Watermark Key 별 lock (같은 JVM 안의 task 끼리만)
+  private final ConcurrentHashMap<String, ReentrantLock> watermarkLocks =
+      new ConcurrentHashMap<>();
+  // 0 이면 resampling 하지 않음
+  private AtomicLong candleSeconds = new AtomicLong();
+  private AtomicReference<CompressedInput.Compression> inputCompression = new AtomicReference<>();
+  // true 면 FlowFile 의 Local File Path 가 가리키는 file 을 직접 읽는다.
+  private AtomicBoolean localFileInput = new AtomicBoolean();
+  // true 면 잘못된 row 만 invalid 로 보내고 나머지는 그대로 처리한다. (false 면 FlowFile 전체가 failure)
+  private AtomicBoolean routeInvalidRows = new AtomicBoolean();
+  // true 면 DB row 를 기간별 table 에 넣는다. 있는 것을 확인한 table 이름은 task 간에 공유한다.
+  private AtomicBoolean dbPartitionTables = new AtomicBoolean();
+  private final Set<String> knownTables =
+      Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+  // 단계별 시간과 처리량 (JMX 로 노출)
+  private AtomicReference<ProcessorMetrics> metrics = new AtomicReference<>();
 
   private List<PropertyDescriptor> descriptors;
 
@@ -127,104 +185,357 @@ public class BitcoinHistoryProcessor extends AbstractProcessor {
   public void onScheduled(final ProcessContext context) {
     final String output = context.getProperty(ConfigUtil.OUTPUT).getValue();
     this.output.set(Output.valueOf(output));
+    this.outputSettings.set(OutputSettings.from(context));
+    this.batchSize.set(context.getProperty(ConfigUtil.BATCH_SIZE).asInteger());
+    this.commitPerBatch.set(
+        "BATCH".equals(context.getProperty(ConfigUtil.COMMIT_INTERVAL).getValue()));
+    this.bulkLoad.set("BULK".equals(context.getProperty(ConfigUtil.DB_LOAD_STRATEGY).getValue()));
+    this.dbQueueSize.set(context.getProperty(ConfigUtil.DB_QUEUE_SIZE).asInteger());
+    if (context.getProperty(ConfigUtil.ASYNC_DB_WRITES).asBoolean()) {
+      this.dbWriterPool.set(
+          Executors.newFixedThreadPool(
+              context.getProperty(ConfigUtil.DB_WRITER_THREADS).asInteger(),
+              new ThreadFactory() {
+
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(final Runnable r) {
+                  final Thread thread =
+                      new Thread(r, "BitcoinHistory DB Writer " + count.incrementAndGet());
+                  thread.setDaemon(true);
+                  return thread;
+                }
+              }));
+    }
+    final String duplicates = context.getProperty(ConfigUtil.DUPLICATE_HANDLING).getValue();
+    this.upsert.set("UPSERT".equals(duplicates));
+    this.timestampCache.set(
+        "INSERT".equals(duplicates)
+            ? null
+            : new TimestampCache(context.getProperty(ConfigUtil.DEDUP_CACHE_SIZE).asInteger()));
+    this.offHeapBatches.set(context.getProperty(ConfigUtil.OFF_HEAP_BATCHES).asBoolean());
+    this.parseParallelism.set(context.getProperty(ConfigUtil.PARSE_PARALLELISM).asInteger());
+    this.parallelMinSize.set(
+        context.getProperty(ConfigUtil.PARALLEL_MIN_SIZE).asDataSize(DataUnit.B).longValue());
+    this.inputCompression.set(
+        CompressedInput.Compression.valueOf(
+            context.getProperty(ConfigUtil.INPUT_COMPRESSION).getValue()));
+    this.localFileInput.set(
+        "LOCAL_FILE".equals(context.getProperty(ConfigUtil.INPUT_SOURCE).getValue()));
+    this.routeInvalidRows.set(
+        "ROUTE".equals(context.getProperty(ConfigUtil.INVALID_ROW_HANDLING).getValue()));
+    this.dbPartitionTables.set(
+        outputSettings.get().isPartitioned()
+            && context.getProperty(ConfigUtil.DB_PARTITION_TABLES).asBoolean());
+    // 멈춘 사이에 table 이 지워졌을 수 있다.
+    knownTables.clear();
+    this.incrementalLoad.set(context.getProperty(ConfigUtil.INCREMENTAL_LOAD).asBoolean());
+    this.candleSeconds.set(
+        context.getProperty(ConfigUtil.CANDLE_INTERVAL).isSet()
+            ? context.getProperty(ConfigUtil.CANDLE_INTERVAL).asTimePeriod(TimeUnit.SECONDS)
+            : 0);
+    this.metrics.set(new ProcessorMetrics(getIdentifier()));
+    if (parseParallelism.get() > 1) {
+      this.parsePool.set(new ForkJoinPool(parseParallelism.get()));
+    }
 
     HikariCPService dbcpService =
         (HikariCPService) context.getProperty(ConfigUtil.DS_PROP).asControllerService();
-    try {
+    this.dbcpService.set(dbcpService);
+  }
 
-      final PreparedStatement stmt =
-          dbcpService
-              .getConnection()
-              .prepareStatement(
-                  "insert into bitcoin_history (history_time, open_price, high, low, closed_price, btc_volume, usd_volume, weighted_price) values (?, ?, ?, ?, ?, ?, ?, ?)");
-      this.stmt.set(stmt);
-    } catch (ProcessException | SQLException e) {
-      getLogger().error("Could not create PreparedStatement", e);
+  @OnStopped
+  public void onStopped() {
+    PreparedStatement stmt;
+    while ((stmt = statements.poll()) != null) {
+      closeStatement(stmt);
+    }
+    batches.clear();
+
+    final ForkJoinPool pool = parsePool.getAndSet(null);
+    if (pool != null) {
+      pool.shutdownNow();
+    }
+
+    // onTrigger 가 모두 끝난 뒤 불리므로 writer 가 하던 일은 이미 commit/rollback 되어 있다.
+    final ExecutorService dbPool = dbWriterPool.getAndSet(null);
+    if (dbPool != null) {
+      dbPool.shutdownNow();
+    }
+
+    final ProcessorMetrics processorMetrics = metrics.getAndSet(null);
+    if (processorMetrics != null) {
+      processorMetrics.close();
     }
   }
 
   @Override
   public void onTrigger(final ProcessContext context, final ProcessSession session)
       throws ProcessException {
-    FlowFile flowFile = session.get();
+    final FlowFile flowFile = session.get();
     if (flowFile == null) {
       // input_required 라서 무조건 flowfile 있지만 확인용으로.
       return;
     }
 
-    final AtomicInteger jsonCounter = new AtomicInteger();
-    final AtomicInteger xmlCounter = new AtomicInteger();
-    final AtomicInteger dbCounter = new AtomicInteger();
-    final AtomicInteger recordsCounter = new AtomicInteger();
-
-    // thread safe set efficient 하지 않지만.
-    final Set<BitcoinHistory> jsonRecords = ConcurrentHashMap.newKeySet();
-    final Set<BitcoinHistory> xmlRecords = ConcurrentHashMap.newKeySet();
-    final Set<BitcoinHistory> dbRecords = ConcurrentHashMap.newKeySet();
-    final AtomicBoolean success = new AtomicBoolean(true);
-
-    // csv 에는 많은 junk data 존재함
-    session.read(
-        flowFile,
-        new InputStreamCallback() {
-
-          @Override
-          public void process(InputStream in) throws IOException {
+    // Input Source 가 LOCAL_FILE 이면 FlowFile content 대신 local file 을 map 해서 읽는다.
+    final MappedFileInputStream localFile;
+    if (localFileInput.get()) {
+      localFile = openLocalFile(context, flowFile);
+      if (localFile == null) {
+        session.transfer(flowFile, ConfigUtil.FAILURE);
+        return;
+      }
+    } else {
+      localFile = null;
+    }
+    final long inputSize = localFile != null ? localFile.size() : flowFile.getSize();
 
-            try (final BufferedReader reader = new BufferedReader(new InputStreamReader(in))) {
+    final TriggerMetrics stats = new TriggerMetrics();
 
-              final Iterable<CSVRecord> records =
-                  CSVFormat.RFC4180.withFirstRecordAsHeader().parse(reader);
+    // 이미 load 한 구간은 parser 에서 timestamp 만 보고 건너뛴다.
+    final String stateKey = incrementalLoad.get() ? getStateKey(context, flowFile) : null;
 
-              for (final CSVRecord record : records) {
-                recordsCounter.incrementAndGet();
-                if (isValid(record)) {
-                  final BitcoinHistory history = createModel(record);
-                  if (isOutputJson()) {
-                    jsonRecords.add(history);
-                  }
+    final AtomicBoolean success = new AtomicBoolean(true);
+    final PreparedStatement stmt = isOutputDb() ? borrowStatement() : null;
+    final HistoryBatch batch = borrowBatch();
+    // finishDb 까지 가지 못하고 예외가 나면 (session.read, sink 생성 ...) DB 작업을 되돌리고 connection 을 닫는다.
+    DbSink openDb = null;
+    boolean dbDone = stmt == null;
+    // 같은 key 는 watermark 를 읽고 commit 할 때까지 한 task 씩 (같이 읽으면 같은 구간을 두 번 load 한다)
+    final ReentrantLock watermarkLock = stateKey != null ? getWatermarkLock(stateKey) : null;
+    if (watermarkLock != null) {
+      watermarkLock.lock();
+    }
+    try {
+      final long watermark =
+          stateKey != null ? readWatermark(context.getStateManager(), stateKey) : Long.MIN_VALUE;
+      final AtomicLong maxTimestamp = new AtomicLong(watermark);
+      final DbWriter dbWriter = stmt != null ? createDbWriter(stmt) : null;
+      final ExecutorService dbPool = dbWriterPool.get();
+      final DbSink db =
+          dbWriter != null && dbPool != null
+              ? new AsyncDbWriter(dbPool, dbWriter, dbQueueSize.get(), offHeapBatches.get())
+              : dbWriter;
+      openDb = db;
+      // 켜진 output 모두를 한 번의 read 로 채운다.
+      final FanOut sinks = new FanOut(db, stats);
+      final OutputSettings settings = outputSettings.get();
+      final String baseName = getFilename(flowFile);
+      final InvalidRowSink invalid =
+          routeInvalidRows.get() ? new InvalidRowSink(session, flowFile, baseName) : null;
+      final JsonSink jsonSink =
+          isOutputJson()
+              ? sinks.add(
+                  new JsonSink(
+                      session, flowFile, settings, baseName, sinks.getBuffer(), jsonFactory))
+              : null;
+      final XmlSink xmlSink =
+          isOutputXml()
+              ? sinks.add(new XmlSink(session, flowFile, settings, baseName, sinks.getBuffer()))
+              : null;
+      final AvroSink avroSink =
+          isOutputAvro()
+              ? sinks.add(new AvroSink(session, flowFile, settings, baseName, sinks.getBuffer()))
+              : null;
+      final ForkJoinPool pool = parsePool.get();
+      final boolean parallel = pool != null && inputSize >= parallelMinSize.get();
+
+      // parser -> (resampler) -> (indicators) -> json / xml / avro / db
+      final BatchHandler enriched =
+          settings.hasIndicators()
+              ? new RollingIndicators(settings.getIndicatorWindow(), offHeapBatches.get(), sinks)
+              : sinks;
+      final Resampler resampler =
+          candleSeconds.get() > 0
+              ? new Resampler(candleSeconds.get(), offHeapBatches.get(), enriched)
+              : null;
+      final BatchHandler next = resampler != null ? resampler : enriched;
+      final BatchHandler tracked =
+          stateKey == null
+              ? next
+              : new BatchHandler() {
 
-                  if (isOutputXml()) {
-                    xmlRecords.add(history);
+                @Override
+                public void handle(final HistoryBatch batch) throws IOException, SQLException {
+                  // 입력 순서와 무관하게 가장 큰 timestamp 를 다음 watermark 로 쓴다.
+                  for (int i = 0; i < batch.size(); i++) {
+                    if (batch.getTimestamp(i) > maxTimestamp.get()) {
+                      maxTimestamp.set(batch.getTimestamp(i));
+                    }
                   }
+                  next.handle(batch);
+                }
+              };
+      // parser 뒤의 모든 단계에 쓴 시간 -> 읽는 데 걸린 시간에서 빼면 parsing 시간
+      final BatchHandler handler =
+          new BatchHandler() {
+
+            @Override
+            public void handle(final HistoryBatch batch) throws IOException, SQLException {
+              final long start = System.nanoTime();
+              try {
+                tracked.handle(batch);
+              } finally {
+                stats.downstreamNanos += System.nanoTime() - start;
+              }
+            }
+          };
+
+      // csv 에는 많은 junk data 존재함
+      // 레코드를 모아두지 않고 읽는 즉시 각 output 으로 내보낸다. -> 파일 크기와 무관하게 heap 사용량이 일정함
+      final InputStreamCallback reader =
+          new InputStreamCallback() {
+
+            @Override
+            public void process(InputStream in) throws IOException {
+
+              final long start = System.nanoTime();
+              try {
+                final InputStream csv =
+                    CompressedInput.open(
+                        in,
+                        inputCompression.get(),
+                        flowFile.getAttribute(CoreAttributes.MIME_TYPE.key()));
+                if (parallel) {
+                  readParallel(csv, pool, batch, handler, watermark, invalid, stats);
+                } else {
+                  readSequential(csv, batch, handler, watermark, invalid, stats);
+                }
+                stats.readNanos = System.nanoTime() - start;
 
-                  if (isOutputDb()) {
-                    dbRecords.add(history);
+                if (resampler != null && stateKey != null) {
+                  // 아직 열려 있을 수 있는 마지막 candle 은 다음 load 에서 완성해서 내보낸다.
+                  final long openStart = resampler.flushComplete();
+                  if (openStart != Long.MAX_VALUE) {
+                    maxTimestamp.set(Math.min(maxTimestamp.get(), openStart - 1));
                   }
+                } else if (resampler != null) {
+                  resampler.flush();
                 }
+                sinks.close();
+              } catch (Exception e) {
+                if (stats.readNanos == 0) {
+                  stats.readNanos = System.nanoTime() - start;
+                }
+                getLogger().error("Error processing input", e);
+                success.set(false);
+                sinks.abort();
               }
-            } catch (Exception e) {
-              getLogger().error("Error processing input", e);
-              success.set(false);
             }
-          }
-        });
+          };
+      if (localFile != null) {
+        readLocalFile(localFile, reader, success);
+      } else {
+        session.read(flowFile, reader);
+      }
 
-    if (isOutputJson()) {
-      writeJson(session, flowFile, jsonRecords, jsonCounter);
-    }
+      if (db != null) {
+        finishDb(db, success, stats);
+        dbDone = true;
+        stats.addDb(dbWriter);
+        // DB 오류가 난 connection 은 상태를 알 수 없으므로 재사용하지 않는다.
+        if (success.get()) {
+          statements.offer(stmt);
+        } else {
+          closeStatement(stmt);
+        }
+      }
 
-    if (isOutputXml()) {
-      writeXml(session, flowFile, xmlRecords, xmlCounter);
-    }
+      // DB 까지 확정된 뒤에 보낸다. (DB 가 거부한 row 도 들어가야 하므로)
+      if (invalid != null) {
+        if (success.get()) {
+          if (dbWriter != null) {
+            invalid.addRejected(dbWriter);
+          }
+          invalid.close();
+          stats.invalidRecords = invalid.getRowCount();
+        } else {
+          invalid.abort();
+        }
+      }
 
-    if (isOutputDb()) {
-      writeDb(dbRecords, dbCounter);
-    }
+      if (jsonSink != null) {
+        stats.jsonRecords = jsonSink.getRecordCount();
+      }
+      if (xmlSink != null) {
+        stats.xmlRecords = xmlSink.getRecordCount();
+      }
+      if (avroSink != null) {
+        stats.avroRecords = avroSink.getRecordCount();
+      }
+      stats.adjustCounters(session);
+      metrics.get().update(stats);
+      final DuplicateFilter duplicateFilter =
+          dbWriter != null ? dbWriter.getDuplicateFilter() : null;
+      if (duplicateFilter != null) {
+        session.adjustCounter(ConfigUtil.DB_DUPLICATES, duplicateFilter.getDuplicates(), true);
+        session.adjustCounter(ConfigUtil.DB_UPDATED, duplicateFilter.getUpdated(), true);
+      }
 
-    session.adjustCounter(ConfigUtil.RECORDS_READ, recordsCounter.get(), true);
-    session.adjustCounter(ConfigUtil.JSON_RECORDS, jsonCounter.get(), true);
-    session.adjustCounter(ConfigUtil.XML_RECORDS, xmlCounter.get(), true);
+      if (!success.get()) {
+        // 성공한 input 은 지우므로 통계는 실패한 FlowFile 에만 붙인다.
+        session.transfer(
+            session.putAllAttributes(flowFile, stats.toAttributes()), ConfigUtil.FAILURE);
+      } else {
+        if (db != null) {
+          transferDbSummary(session, flowFile, stats);
+        }
+        session.remove(flowFile);
+        if (stateKey != null && maxTimestamp.get() > watermark) {
+          // output 이 확정된 뒤에 watermark 를 올린다.
+          session.commit();
+          updateWatermark(context.getStateManager(), stateKey, maxTimestamp.get());
+        }
+      }
+    } finally {
+      batch.clear();
+      batches.offer(batch);
+      if (!dbDone) {
+        if (openDb != null) {
+          openDb.rollback();
+        }
+        closeStatement(stmt);
+      }
+      if (watermarkLock != null) {
+        watermarkLock.unlock();
+      }
+    }
+  }
 
-    if (!success.get()) {
-      session.transfer(flowFile, ConfigUtil.FAILURE);
-    } else {
-      session.remove(flowFile);
+  private MappedFileInputStream openLocalFile(
+      final ProcessContext context, final FlowFile flowFile) {
+    final String path =
+        context
+            .getProperty(ConfigUtil.LOCAL_FILE_PATH)
+            .evaluateAttributeExpressions(flowFile)
+            .getValue();
+    try {
+      return new MappedFileInputStream(Paths.get(path));
+    } catch (IOException | InvalidPathException e) {
+      getLogger().error("Could not open local file {}", new Object[] {path}, e);
+      return null;
     }
   }
 
-  private boolean isValid(final CSVRecord record) {
-    return !record.toString().contains("NaN");
+  // session.read 와 같은 callback 으로 읽는다. (callback 안에서 난 오류는 callback 이 처리함)
+  private void readLocalFile(
+      final MappedFileInputStream in,
+      final InputStreamCallback reader,
+      final AtomicBoolean success) {
+    try {
+      reader.process(in);
+    } catch (IOException e) {
+      getLogger().error("Error processing input", e);
+      success.set(false);
+    } finally {
+      try {
+        in.close();
+      } catch (IOException e) {
+        getLogger().warn("Could not close local file", e);
+      }
+    }
   }
 
   private boolean isOutputJson() {
@@ -235,145 +546,253 @@ public class BitcoinHistoryProcessor extends AbstractProcessor {
     return output.get() == Output.ALL || output.get() == Output.XML;
   }
 
+  // ALL 에는 포함하지 않는다. (기존 flow 의 output 이 바뀌지 않도록)
+  private boolean isOutputAvro() {
+    return output.get() == Output.AVRO;
+  }
+
   private boolean isOutputDb() {
     return output.get() == Output.ALL || output.get() == Output.DB;
   }
 
-  private BitcoinHistory createModel(final CSVRecord record) {
-
-    final BitcoinHistory history = new BitcoinHistory();
-
-    final long unixTimestamp = Long.parseLong(record.get("Timestamp"));
-    final Instant instant = Instant.ofEpochSecond(unixTimestamp);
-    final ZonedDateTime timestamp = ZonedDateTime.ofInstant(instant, ZoneId.systemDefault());
-
-    final double open = Double.parseDouble(record.get("Open"));
-    final double high = Double.parseDouble(record.get("High"));
-    final double low = Double.parseDouble(record.get("Low"));
-    final double close = Double.parseDouble(record.get("Close"));
-    final double btcVolume = Double.parseDouble(record.get("Volume_(BTC)"));
-    final double usdVolume = Double.parseDouble(record.get("Volume_(Currency)"));
-    final double weightedPrice = Double.parseDouble(record.get("Weighted_Price"));
-
-    history.setTimestamp(timestamp);
-    history.setOpen(open);
-    history.setHigh(high);
-    history.setLow(low);
-    history.setClose(close);
-    history.setBtcVolume(btcVolume);
-    history.setUsdVolume(usdVolume);
-    history.setWeightedPrice(weightedPrice);
+  // 읽은 row 수는 stats 에 센다. (예외가 나도 그때까지 센 값은 남음)
+  private void readSequential(
+      final InputStream in,
+      final HistoryBatch batch,
+      final BatchHandler handler,
+      final long watermark,
+      final InvalidRowSink invalid,
+      final TriggerMetrics stats)
+      throws IOException, SQLException {
+    final BitstampCsvParser parser = new BitstampCsvParser(in);
+    parser.setWatermark(watermark);
+
+    BitstampCsvParser.Row row;
+    while ((row = parser.next()) != BitstampCsvParser.Row.END) {
+      stats.rowsRead++;
+      if (row == BitstampCsvParser.Row.MALFORMED) {
+        if (invalid == null) {
+          throw new IOException(
+              "Malformed row at line " + parser.getLineNumber() + ": " + parser.getError());
+        }
+        invalid.malformed(parser.getLineNumber(), parser.getError(), parser.getLine());
+      } else if (row == BitstampCsvParser.Row.SKIPPED) {
+        stats.rowsSkipped++;
+      } else if (row == BitstampCsvParser.Row.VALID) {
+        stats.rowsValid++;
+        batch.add(parser);
+        if (batch.isFull()) {
+          handler.handle(batch);
+          batch.clear();
+        }
+      }
+    }
 
-    return history;
+    if (!batch.isEmpty()) {
+      handler.handle(batch);
+      batch.clear();
+    }
   }
 
-  private void writeJson(
-      ProcessSession session,
-      FlowFile flowFile,
-      Set<BitcoinHistory> jsonRecords,
-      AtomicInteger jsonCounter) {
-
-    for (final BitcoinHistory history : jsonRecords) {
+  // chunk 별 parsing 은 pool 에서 하고, 그 다음 단계는 지금 thread 에서 chunk 순서대로 한다.
+  private void readParallel(
+      final InputStream in,
+      final ForkJoinPool pool,
+      final HistoryBatch batch,
+      final BatchHandler handler,
+      final long watermark,
+      final InvalidRowSink invalid,
+      final TriggerMetrics stats)
+      throws IOException, SQLException {
+    // chunk 는 heap batch 로 parsing 하고 off-heap 이면 빌려 온 batch 에 옮겨 담는다.
+    final ParallelCsvReader reader =
+        new ParallelCsvReader(
+            pool, parseParallelism.get(), offHeapBatches.get() ? batch : null, watermark, invalid);
+    try {
+      reader.read(in, handler);
+    } finally {
+      stats.rowsRead = reader.getRows();
+      stats.rowsValid = reader.getValidRows();
+      stats.rowsSkipped = reader.getSkippedRows();
+    }
+  }
 
-      final FlowFile createdFlowFile = session.create(flowFile);
+  private HistoryBatch borrowBatch() {
+    final HistoryBatch batch = batches.poll();
+    return batch != null
+        ? batch
+        : HistoryBatch.allocate(HistoryBatch.DEFAULT_CAPACITY, offHeapBatches.get());
+  }
 
-      final FlowFile jsonFlowFile =
-          session.write(
-              createdFlowFile,
-              new OutputStreamCallback() {
+  private PreparedStatement borrowStatement() {
+    final PreparedStatement stmt = statements.poll();
+    if (stmt != null) {
+      return stmt;
+    }
 
-                @Override
-                public void process(OutputStream out) throws IOException {
+    final Connection connection = dbcpService.get().getConnection();
+    try {
+      // commit 은 DbWriter 가 FlowFile 또는 batch 단위로 직접 한다.
+      connection.setAutoCommit(false);
+      // BULK 는 multi-row insert 를 미리 prepare 해 둔다. (COPY 를 쓸 수 있으면 connection 만 빌려 씀)
+      return connection.prepareStatement(
+          bulkLoad.get()
+              ? MultiRowDbWriter.insertSql(MultiRowDbWriter.rowsPerStatement(batchSize.get()))
+              : DbWriter.INSERT_SQL);
+    } catch (SQLException e) {
+      closeConnection(connection);
+      throw new ProcessException("Could not create PreparedStatement", e);
+    }
+  }
 
-                  try (final BufferedWriter writer =
-                      new BufferedWriter(new OutputStreamWriter(out))) {
-                    mapper.writeValue(writer, history);
-                  } catch (Exception e) {
-                    getLogger().error("can't write record to Json : {}", new Object[] {history}, e);
-                  }
-                }
-              });
+  private DbWriter createDbWriter(final PreparedStatement stmt) {
+    try {
+      final DbWriter dbWriter = newDbWriter(stmt);
+      dbWriter.setBatchTimer(metrics.get().getDbBatchTimer());
+      if (routeInvalidRows.get()) {
+        dbWriter.isolateRejectedRows();
+      }
+      if (dbPartitionTables.get()) {
+        dbWriter.setPartitionTables(newPartitionTables());
+      }
+      final TimestampCache cache = timestampCache.get();
+      if (cache != null) {
+        final DuplicateFilter filter =
+            new DuplicateFilter(stmt.getConnection(), cache, upsert.get());
+        if (dbPartitionTables.get()) {
+          filter.setPartitionTables(newPartitionTables());
+        }
+        dbWriter.setDuplicateFilter(filter);
+      }
+      return dbWriter;
+    } catch (SQLException e) {
+      closeStatement(stmt);
+      throw new ProcessException("Could not prepare DB batch", e);
+    }
+  }
 
-      final Map<String, String> attrs = new ConcurrentHashMap<String, String>();
-      final String fileName = getFilename(jsonFlowFile) + jsonCounter.incrementAndGet() + ".json";
-      attrs.put(CoreAttributes.FILENAME.key(), fileName);
-      attrs.put(CoreAttributes.MIME_TYPE.key(), ConfigUtil.JSON_MIME_TYPE);
-      attrs.put(ConfigUtil.JSON_RECORDS, String.valueOf(jsonCounter));
+  private PartitionTables newPartitionTables() {
+    return new PartitionTables(
+        outputSettings.get().newPartitioner(), dbcpService.get(), knownTables);
+  }
 
-      final FlowFile updatedFlowFile = session.putAllAttributes(jsonFlowFile, attrs);
+  private DbWriter newDbWriter(final PreparedStatement stmt) throws SQLException {
+    if (!bulkLoad.get()) {
+      return new BatchDbWriter(stmt, batchSize.get(), commitPerBatch.get());
+    }
 
-      session.transfer(updatedFlowFile, ConfigUtil.JSON);
+    final DbWriter copyWriter = CopyDbWriter.create(stmt, batchSize.get(), commitPerBatch.get());
+    return copyWriter != null
+        ? copyWriter
+        : new MultiRowDbWriter(
+            stmt,
+            MultiRowDbWriter.rowsPerStatement(batchSize.get()),
+            batchSize.get(),
+            commitPerBatch.get());
+  }
 
-      getLogger().debug("Wrote {} to Json", new Object[] {history});
+  private void closeStatement(final PreparedStatement stmt) {
+    try {
+      final Connection connection = stmt.getConnection();
+      stmt.close();
+      closeConnection(connection);
+    } catch (SQLException e) {
+      getLogger().warn("Could not close PreparedStatement", e);
     }
   }
 
-  private void writeXml(
-      ProcessSession session,
-      FlowFile flowFile,
-      Set<BitcoinHistory> xmlRecords,
-      AtomicInteger xmlCounter) {
-
-    for (final BitcoinHistory history : xmlRecords) {
-
-      final FlowFile createdFlowFile = session.create(flowFile);
+  private void closeConnection(final Connection connection) {
+    try {
+      // pool 로 돌려준다.
+      connection.close();
+    } catch (SQLException e) {
+      getLogger().warn("Could not close DB connection", e);
+    }
+  }
 
-      final FlowFile xmlFlowFile =
-          session.write(
-              createdFlowFile,
-              new OutputStreamCallback() {
+  // parsing 이 실패하면 FlowFile 단위로 rollback 하고, 성공하면 남은 batch 를 commit 한다.
+  private void finishDb(
+      final DbSink db, final AtomicBoolean success, final TriggerMetrics stats) {
+    if (!success.get()) {
+      db.rollback();
+      return;
+    }
 
-                @Override
-                public void process(OutputStream out) throws IOException {
-
-                  try (final BufferedWriter writer =
-                      new BufferedWriter(new OutputStreamWriter(out))) {
-                    // mapper.writeValue(writer, history);
-                    marshaller.get().marshal(history, writer);
-                  } catch (Exception e) {
-                    getLogger().error("can't write record to XML : {}", new Object[] {history}, e);
-                  }
-                }
-              });
+    try {
+      stats.dbRecords = db.finish();
+      getLogger().debug("Wrote {} rows to DB", new Object[] {stats.dbRecords});
+    } catch (SQLException e) {
+      getLogger().error("Could not insert into DB", e);
+      db.rollback();
+      stats.dbRecords = 0;
+      success.set(false);
+    }
+  }
 
-      final Map<String, String> attrs = new ConcurrentHashMap<String, String>();
-      final String fileName = getFilename(xmlFlowFile) + xmlCounter.incrementAndGet() + ".xml";
-      attrs.put(CoreAttributes.FILENAME.key(), fileName);
-      attrs.put(CoreAttributes.MIME_TYPE.key(), ConfigUtil.XML_MIME_TYPE);
-      attrs.put(ConfigUtil.XML_RECORDS, String.valueOf(xmlCounter));
+  // DB 에 쓴 결과는 content 없이 attribute 만 있는 FlowFile 로 db relationship 에 보낸다.
+  private void transferDbSummary(
+      final ProcessSession session, final FlowFile flowFile, final TriggerMetrics stats) {
+    final Map<String, String> attrs = stats.toAttributes();
+    attrs.put(CoreAttributes.FILENAME.key(), getFilename(flowFile) + ".db");
+    attrs.put(ConfigUtil.DB_RECORDS, String.valueOf(stats.dbRecords));
+    session.transfer(session.putAllAttributes(session.create(flowFile), attrs), ConfigUtil.DB);
+  }
 
-      final FlowFile updatedFlowFile = session.putAllAttributes(xmlFlowFile, attrs);
+  private String getStateKey(final ProcessContext context, final FlowFile flowFile) {
+    final String key =
+        context
+            .getProperty(ConfigUtil.WATERMARK_KEY)
+            .evaluateAttributeExpressions(flowFile)
+            .getValue();
+    return key == null || key.isEmpty()
+        ? ConfigUtil.WATERMARK_STATE_KEY
+        : ConfigUtil.WATERMARK_STATE_KEY + "." + key;
+  }
 
-      session.transfer(updatedFlowFile, ConfigUtil.XML);
+  private ReentrantLock getWatermarkLock(final String key) {
+    final ReentrantLock lock = new ReentrantLock();
+    final ReentrantLock existing = watermarkLocks.putIfAbsent(key, lock);
+    return existing != null ? existing : lock;
+  }
 
-      getLogger().debug("Wrote {} to XML", new Object[] {history});
+  private long readWatermark(final StateManager stateManager, final String key) {
+    try {
+      final String value = stateManager.getState(Scope.CLUSTER).get(key);
+      return value != null ? Long.parseLong(value) : Long.MIN_VALUE;
+    } catch (IOException e) {
+      throw new ProcessException("Could not read watermark from state", e);
     }
   }
 
-  private void writeDb(final Set<BitcoinHistory> dbRecords, final AtomicInteger count) {
-    final PreparedStatement stmt = this.stmt.get();
+  // 다른 task (다른 node) 가 동시에 올렸을 수 있으므로 더 큰 값일 때만 replace 한다.
+  private synchronized void updateWatermark(
+      final StateManager stateManager, final String key, final long timestamp) {
     try {
-      for (BitcoinHistory history : dbRecords) {
-        stmt.setTimestamp(1, Timestamp.from(history.getTimestamp().toInstant()));
-        stmt.setDouble(2, history.getOpen());
-        stmt.setDouble(3, history.getHigh());
-        stmt.setDouble(4, history.getLow());
-        stmt.setDouble(5, history.getClose());
-        stmt.setDouble(6, history.getBtcVolume());
-        stmt.setDouble(7, history.getUsdVolume());
-        stmt.setDouble(8, history.getWeightedPrice());
-
-        stmt.execute();
-        count.incrementAndGet();
-        getLogger().debug("Wrote {} to DB", new Object[] {history});
+      while (true) {
+        final StateMap state = stateManager.getState(Scope.CLUSTER);
+        final String current = state.get(key);
+        if (current != null && Long.parseLong(current) >= timestamp) {
+          return;
+        }
+
+        final Map<String, String> newState = new HashMap<>(state.toMap());
+        newState.put(key, Long.toString(timestamp));
+        // state 가 비어 있을 때 (version -1) 도 replace 로 넣어야 먼저 저장한 node 의 값을 덮지 않는다.
+        if (stateManager.replace(state, newState, Scope.CLUSTER)) {
+          return;
+        }
       }
-    } catch (Exception e) {
-      getLogger().error("Could not insert into DB", e);
+    } catch (IOException e) {
+      // output 은 이미 commit 됐으므로 다음 load 에서 같은 row 가 다시 나올 수 있다.
+      getLogger().warn("Could not store watermark {} for {}", new Object[] {timestamp, key}, e);
     }
   }
 
   private String getFilename(final FlowFile flowFile) {
-    final String fileName = flowFile.getAttribute(CoreAttributes.FILENAME.key());
-    return fileName.substring(0, fileName.lastIndexOf("."));
+    final String fileName =
+        CompressedInput.stripExtension(flowFile.getAttribute(CoreAttributes.FILENAME.key()));
+    // 확장자가 없는 이름 (Output DB 만 쓰는 flow 등) 은 그대로
+    final int dot = fileName.lastIndexOf('.');
+    return dot > 0 ? fileName.substring(0, dot) : fileName;
   }
 }
@@ -0,0 +1,178 @@
+package com.kisline.processors.bitcoin;
+
+import org.apache.nifi.annotation.behavior.InputRequirement;
+import org.apache.nifi.annotation.behavior.InputRequirement.Requirement;
+import org.apache.nifi.annotation.behavior.WritesAttribute;
+import org.apache.nifi.annotation.behavior.WritesAttributes;
+import org.apache.nifi.annotation.documentation.CapabilityDescription;
+import org.apache.nifi.annotation.documentation.SeeAlso;
+import org.apache.nifi.annotation.documentation.Tags;
+import org.apache.nifi.annotation.lifecycle.OnScheduled;
+import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.flowfile.attributes.CoreAttributes;
+import org.apache.nifi.processor.AbstractProcessor;
+import org.apache.nifi.processor.ProcessContext;
+import org.apache.nifi.processor.ProcessSession;
+import org.apache.nifi.processor.Relationship;
+import org.apache.nifi.processor.exception.ProcessException;
+import org.apache.nifi.processor.io.StreamCallback;
+import org.apache.nifi.schema.access.SchemaNotFoundException;
+import org.apache.nifi.serialization.MalformedRecordException;
+import org.apache.nifi.serialization.RecordReader;
+import org.apache.nifi.serialization.RecordReaderFactory;
+import org.apache.nifi.serialization.RecordSetWriter;
+import org.apache.nifi.serialization.RecordSetWriterFactory;
+import org.apache.nifi.serialization.WriteResult;
+import org.apache.nifi.serialization.record.Record;
+import org.apache.nifi.serialization.record.RecordSchema;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+@Tags({"Bitcoin", "NICE", "record", "CSV", "JSON", "Avro"})
+@CapabilityDescription(
+    "Reads Bitstamp minute bars with a Record Reader and writes them as BitcoinHistory records "
+        + "with a Record Writer. Rows with NaN values are dropped")
+@SeeAlso(BitcoinHistoryProcessor.class)
+@WritesAttributes({
+  @WritesAttribute(
+      attribute = ConfigUtil.RECORD_COUNT_ATTRIBUTE,
+      description = "Number of records written"),
+  @WritesAttribute(attribute = "mime.type", description = "MIME type of the Record Writer")
+})
+@InputRequirement(Requirement.INPUT_REQUIRED)
+public class BitcoinHistoryRecordProcessor extends AbstractProcessor {
+
+  private AtomicReference<RecordReaderFactory> readerFactory = new AtomicReference<>();
+  private AtomicReference<RecordSetWriterFactory> writerFactory = new AtomicReference<>();
+  // 0 이면 resampling 하지 않음
+  private AtomicLong candleSeconds = new AtomicLong();
+
+  @Override
+  public Set<Relationship> getRelationships() {
+    return ConfigUtil.getRecordRelationships();
+  }
+
+  @Override
+  public final List<PropertyDescriptor> getSupportedPropertyDescriptors() {
+    return ConfigUtil.getRecordProperties();
+  }
+
+  @OnScheduled
+  public void onScheduled(final ProcessContext context) {
+    this.readerFactory.set(
+        context
+            .getProperty(ConfigUtil.RECORD_READER)
+            .asControllerService(RecordReaderFactory.class));
+    this.writerFactory.set(
+        context
+            .getProperty(ConfigUtil.RECORD_WRITER)
+            .asControllerService(RecordSetWriterFactory.class));
+    this.candleSeconds.set(
+        context.getProperty(ConfigUtil.CANDLE_INTERVAL).isSet()
+            ? context.getProperty(ConfigUtil.CANDLE_INTERVAL).asTimePeriod(TimeUnit.SECONDS)
+            : 0);
+  }
+
+  @Override
+  public void onTrigger(final ProcessContext context, final ProcessSession session)
+      throws ProcessException {
+    final FlowFile flowFile = session.get();
+    if (flowFile == null) {
+      return;
+    }
+
+    final AtomicLong rowsRead = new AtomicLong();
+    final AtomicLong rowsValid = new AtomicLong();
+    final Map<String, String> attributes = new HashMap<>();
+
+    final FlowFile output;
+    try {
+      // record 를 모아두지 않고 읽는 즉시 writer 로 넘긴다.
+      output =
+          session.write(
+              flowFile,
+              new StreamCallback() {
+
+                @Override
+                public void process(final InputStream in, final OutputStream out)
+                    throws IOException {
+                  try (final RecordReader reader =
+                      readerFactory.get().createRecordReader(flowFile, in, getLogger())) {
+                    final RecordSchema schema =
+                        writerFactory.get().getSchema(flowFile.getAttributes(), RecordSink.SCHEMA);
+                    try (final RecordSetWriter writer =
+                        writerFactory.get().createWriter(getLogger(), schema, out)) {
+                      writer.beginRecordSet();
+                      convert(reader, new RecordSink(writer, schema), rowsRead, rowsValid);
+                      final WriteResult result = writer.finishRecordSet();
+
+                      attributes.putAll(result.getAttributes());
+                      attributes.put(
+                          ConfigUtil.RECORD_COUNT_ATTRIBUTE,
+                          String.valueOf(result.getRecordCount()));
+                      attributes.put(CoreAttributes.MIME_TYPE.key(), writer.getMimeType());
+                    }
+                  } catch (SchemaNotFoundException | MalformedRecordException | SQLException e) {
+                    throw new ProcessException("Could not convert records", e);
+                  }
+                }
+              });
+    } catch (ProcessException e) {
+      getLogger().error("Error processing input {}", new Object[] {flowFile}, e);
+      session.transfer(flowFile, ConfigUtil.FAILURE);
+      return;
+    }
+
+    session.adjustCounter(ConfigUtil.RECORDS_READ, rowsRead.get(), true);
+    session.adjustCounter(ConfigUtil.RECORDS_VALID, rowsValid.get(), true);
+    session.adjustCounter(ConfigUtil.RECORDS_INVALID, rowsRead.get() - rowsValid.get(), true);
+    session.adjustCounter(
+        ConfigUtil.RECORDS_WRITTEN,
+        Long.parseLong(attributes.get(ConfigUtil.RECORD_COUNT_ATTRIBUTE)),
+        true);
+    session.transfer(session.putAllAttributes(output, attributes), ConfigUtil.SUCCESS);
+  }
+
+  // reader -> (resampler) -> sink
+  private void convert(
+      final RecordReader reader,
+      final RecordSink sink,
+      final AtomicLong rowsRead,
+      final AtomicLong rowsValid)
+      throws IOException, SQLException, MalformedRecordException {
+    final Resampler resampler =
+        candleSeconds.get() > 0 ? new Resampler(candleSeconds.get(), false, sink) : null;
+    final BatchHandler handler = resampler != null ? resampler : sink;
+    final HistoryBatch batch = HistoryBatch.allocate(HistoryBatch.DEFAULT_CAPACITY, false);
+
+    Record record;
+    while ((record = reader.nextRecord()) != null) {
+      rowsRead.incrementAndGet();
+      if (sink.add(record, batch)) {
+        rowsValid.incrementAndGet();
+        if (batch.isFull()) {
+          handler.handle(batch);
+          batch.clear();
+        }
+      }
+    }
+
+    if (!batch.isEmpty()) {
+      handler.handle(batch);
+    }
+    if (resampler != null) {
+      resampler.flush();
+    }
+  }
+}
@@ -0,0 +1,402 @@
+package com.kisline.processors.bitcoin;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+// Bitstamp minute bar CSV 전용 parser.
+// 재사용하는 byte buffer 에서 바로 읽고, header 의 column 위치는 처음 한 번만 찾는다.
+// 숫자는 String 을 만들지 않고 byte 에서 바로 parsing 한다. (quote 가 없는 고정 layout 만 지원)
+final class BitstampCsvParser {
+
+  enum Row {
+    VALID,
+    NAN, // Bitstamp 의 빈 구간 (모든 값이 NaN) -> junk 로 보고 건너뜀
+    MALFORMED,
+    SKIPPED, // watermark 이하의 (이미 load 한) row -> timestamp 만 보고 건너뜀
+    END
+  }
+
+  static final int TIMESTAMP = 0;
+  static final int OPEN = 1;
+  static final int HIGH = 2;
+  static final int LOW = 3;
+  static final int CLOSE = 4;
+  static final int BTC_VOLUME = 5;
+  static final int USD_VOLUME = 6;
+  static final int WEIGHTED_PRICE = 7;
+
+  static final String[] COLUMNS = {
+    "Timestamp",
+    "Open",
+    "High",
+    "Low",
+    "Close",
+    "Volume_(BTC)",
+    "Volume_(Currency)",
+    "Weighted_Price"
+  };
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  // 10^22 까지는 double 로 정확히 표현된다. (fast path 조건)
+  private static final double[] POWERS_OF_TEN = {
+    1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16,
+    1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+  };
+
+  private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+  private final InputStream in;
+  private byte[] buf;
+  private int pos;
+  private int limit;
+  private boolean eof;
+
+  // columnSlots[i] : i 번째 CSV field 가 어느 값(TIMESTAMP, OPEN ...)인지. 관심 없는 column 은 -1
+  private int[] columnSlots;
+  private int timestampField;
+  private int[] fieldStarts;
+  private int[] fieldEnds;
+
+  private final double[] values = new double[COLUMNS.length];
+  private long timestamp;
+  private long watermark = Long.MIN_VALUE;
+  private long lineNumber;
+  private String error;
+  // 마지막으로 읽은 row 의 buffer 위치 (다음 next 전까지 유효)
+  private int rowStart;
+  private int rowEnd;
+
+  BitstampCsvParser(final InputStream in) throws IOException {
+    this.in = in;
+    this.buf = new byte[BUFFER_SIZE];
+    readHeader();
+  }
+
+  // header 가 없는 chunk(완전한 line 들)를 header 가 정한 column 위치로 parsing 한다.
+  // line 번호는 chunk 의 첫 line 을 1 로 센다.
+  BitstampCsvParser(final BitstampCsvParser header, final byte[] chunk, final int length) {
+    this.in = null;
+    this.buf = chunk;
+    this.limit = length;
+    this.eof = true;
+    this.columnSlots = header.columnSlots;
+    this.timestampField = header.timestampField;
+    this.watermark = header.watermark;
+    this.fieldStarts = new int[columnSlots.length];
+    this.fieldEnds = new int[columnSlots.length];
+  }
+
+  // 다음 data row 를 읽는다. 빈 줄은 건너뛴다.
+  Row next() throws IOException {
+    while (true) {
+      final int lineEnd = nextLine();
+      if (lineEnd < 0) {
+        return Row.END;
+      }
+
+      final int lineStart = pos;
+      pos = lineEnd + 1;
+      final int end = trimLineEnd(lineStart, lineEnd);
+      if (end == lineStart) {
+        continue;
+      }
+
+      rowStart = lineStart;
+      rowEnd = end;
+      return parseRow(lineStart, end);
+    }
+  }
+
+  // timestamp 가 watermark 이하인 row 는 값을 parsing 하지 않고 SKIPPED 로 돌려준다.
+  void setWatermark(final long watermark) {
+    this.watermark = watermark;
+  }
+
+  long getTimestamp() {
+    return timestamp;
+  }
+
+  double get(final int column) {
+    return values[column];
+  }
+
+  // 마지막으로 읽은 row 의 line 번호 (header 가 1)
+  long getLineNumber() {
+    return lineNumber;
+  }
+
+  // MALFORMED row 의 이유 (line 번호는 getLineNumber)
+  String getError() {
+    return error;
+  }
+
+  // 마지막으로 읽은 row 의 원래 text (줄바꿈 제외). invalid 로 보낼 MALFORMED row 에만 부른다.
+  String getLine() {
+    return new String(buf, rowStart, rowEnd - rowStart, StandardCharsets.UTF_8);
+  }
+
+  private void readHeader() throws IOException {
+    final int lineEnd = nextLine();
+    if (lineEnd < 0) {
+      throw new IOException("CSV input has no header");
+    }
+
+    int start = pos;
+    // UTF-8 BOM
+    if (lineEnd - start >= 3
+        && buf[start] == (byte) 0xEF
+        && buf[start + 1] == (byte) 0xBB
+        && buf[start + 2] == (byte) 0xBF) {
+      start += 3;
+    }
+
+    final String header =
+        new String(buf, start, trimLineEnd(start, lineEnd) - start, StandardCharsets.US_ASCII);
+    pos = lineEnd + 1;
+
+    final String[] names = header.split(",", -1);
+    columnSlots = new int[names.length];
+    fieldStarts = new int[names.length];
+    fieldEnds = new int[names.length];
+
+    final boolean[] found = new boolean[COLUMNS.length];
+    for (int i = 0; i < names.length; i++) {
+      columnSlots[i] = -1;
+      for (int slot = 0; slot < COLUMNS.length; slot++) {
+        if (COLUMNS[slot].equals(names[i].trim())) {
+          columnSlots[i] = slot;
+          found[slot] = true;
+          if (slot == TIMESTAMP) {
+            timestampField = i;
+          }
+        }
+      }
+    }
+
+    for (int slot = 0; slot < COLUMNS.length; slot++) {
+      if (!found[slot]) {
+        throw new IOException("CSV header is missing column " + COLUMNS[slot]);
+      }
+    }
+  }
+
+  private Row parseRow(final int start, final int end) {
+    int field = 0;
+    int fieldStart = start;
+    for (int i = start; i <= end; i++) {
+      if (i == end || buf[i] == ',') {
+        if (field >= fieldStarts.length) {
+          return malformed("expected " + fieldStarts.length + " fields");
+        }
+        fieldStarts[field] = fieldStart;
+        fieldEnds[field] = i;
+        field++;
+        fieldStart = i + 1;
+      }
+    }
+
+    if (field != fieldStarts.length) {
+      return malformed("expected " + fieldStarts.length + " fields but found " + field);
+    }
+
+    if (!parseTimestamp(fieldStarts[timestampField], fieldEnds[timestampField])) {
+      return malformed("invalid " + COLUMNS[TIMESTAMP]);
+    }
+    if (timestamp <= watermark) {
+      return Row.SKIPPED;
+    }
+
+    boolean nan = false;
+    for (int i = 0; i < columnSlots.length; i++) {
+      final int slot = columnSlots[i];
+      if (slot < 0 || slot == TIMESTAMP) {
+        continue;
+      }
+
+      final int s = fieldStarts[i];
+      final int e = fieldEnds[i];
+      if (isNaN(s, e)) {
+        nan = true;
+      } else {
+        final double value = parseDouble(s, e);
+        if (Double.isNaN(value)) {
+          return malformed("invalid " + COLUMNS[slot]);
+        }
+        values[slot] = value;
+      }
+    }
+
+    return nan ? Row.NAN : Row.VALID;
+  }
+
+  private Row malformed(final String reason) {
+    error = reason;
+    return Row.MALFORMED;
+  }
+
+  private boolean parseTimestamp(final int start, final int end) {
+    if (end == start || end - start > 18) {
+      return false;
+    }
+
+    long value = 0;
+    for (int i = start; i < end; i++) {
+      final int digit = buf[i] - '0';
+      if (digit < 0 || digit > 9) {
+        return false;
+      }
+      value = value * 10 + digit;
+    }
+    timestamp = value;
+    return true;
+  }
+
+  private boolean isNaN(final int start, final int end) {
+    return end - start == 3 && buf[start] == 'N' && buf[start + 1] == 'a' && buf[start + 2] == 'N';
+  }
+
+  // 숫자가 아니면 NaN 을 돌려준다.
+  // 유효숫자 18 자리, 10^22 이내의 값은 (mantissa / 10^n) 한 번의 연산으로 정확히 반올림된다.
+  // 그 밖의 드문 경우만 Double.parseDouble 로 넘긴다.
+  private double parseDouble(final int start, final int end) {
+    int i = start;
+    boolean negative = false;
+    if (i < end && (buf[i] == '-' || buf[i] == '+')) {
+      negative = buf[i] == '-';
+      i++;
+    }
+
+    long mantissa = 0;
+    int digits = 0;
+    int exponent = 0;
+    boolean anyDigit = false;
+    boolean dot = false;
+    boolean exact = true;
+    for (; i < end; i++) {
+      final byte b = buf[i];
+      if (b >= '0' && b <= '9') {
+        anyDigit = true;
+        if (mantissa == 0 && b == '0') {
+          // 앞쪽 0 은 유효숫자가 아님
+          if (dot) {
+            exponent--;
+          }
+        } else if (digits < 18) {
+          mantissa = mantissa * 10 + (b - '0');
+          digits++;
+          if (dot) {
+            exponent--;
+          }
+        } else {
+          exact = false;
+          if (!dot) {
+            exponent++;
+          }
+        }
+      } else if (b == '.' && !dot) {
+        dot = true;
+      } else if (b == 'e' || b == 'E') {
+        break;
+      } else {
+        return Double.NaN;
+      }
+    }
+
+    if (!anyDigit) {
+      return Double.NaN;
+    }
+
+    if (i < end) {
+      // exponent
+      i++;
+      boolean negativeExponent = false;
+      if (i < end && (buf[i] == '-' || buf[i] == '+')) {
+        negativeExponent = buf[i] == '-';
+        i++;
+      }
+      if (i == end) {
+        return Double.NaN;
+      }
+      int e = 0;
+      for (; i < end; i++) {
+        final int digit = buf[i] - '0';
+        if (digit < 0 || digit > 9) {
+          return Double.NaN;
+        }
+        if (e < 10000) {
+          e = e * 10 + digit;
+        }
+      }
+      exponent += negativeExponent ? -e : e;
+    }
+
+    if (exact && mantissa <= MAX_EXACT_MANTISSA) {
+      if (mantissa == 0) {
+        return negative ? -0.0 : 0.0;
+      }
+      if (exponent >= 0 && exponent < POWERS_OF_TEN.length) {
+        final double value = mantissa * POWERS_OF_TEN[exponent];
+        return negative ? -value : value;
+      }
+      if (exponent < 0 && -exponent < POWERS_OF_TEN.length) {
+        final double value = mantissa / POWERS_OF_TEN[-exponent];
+        return negative ? -value : value;
+      }
+    }
+
+    return Double.parseDouble(new String(buf, start, end - start, StandardCharsets.US_ASCII));
+  }
+
+  // '\r\n' 의 '\r' 을 뺀 line 끝
+  private int trimLineEnd(final int start, final int end) {
+    return end > start && buf[end - 1] == '\r' ? end - 1 : end;
+  }
+
+  // pos 부터 시작하는 line 의 끝('\n' 위치, 마지막 line 은 limit)을 찾는다. 더 이상 line 이 없으면 -1
+  private int nextLine() throws IOException {
+    int scan = pos;
+    while (true) {
+      for (; scan < limit; scan++) {
+        if (buf[scan] == '\n') {
+          lineNumber++;
+          return scan;
+        }
+      }
+
+      if (eof) {
+        if (pos < limit) {
+          // 줄바꿈 없이 끝나는 마지막 line
+          lineNumber++;
+          return limit;
+        }
+        return -1;
+      }
+
+      scan -= pos;
+      fill();
+    }
+  }
+
+  // 남은 byte 를 buffer 앞으로 옮기고 뒤를 채운다. line 이 buffer 보다 길면 buffer 를 늘린다.
+  private void fill() throws IOException {
+    final int remaining = limit - pos;
+    if (remaining == buf.length) {
+      final byte[] bigger = new byte[buf.length * 2];
+      System.arraycopy(buf, pos, bigger, 0, remaining);
+      buf = bigger;
+    } else if (pos > 0) {
+      System.arraycopy(buf, pos, buf, 0, remaining);
+    }
+    pos = 0;
+    limit = remaining;
+
+    final int read = in.read(buf, limit, buf.length - limit);
+    if (read < 0) {
+      eof = true;
+    } else {
+      limit += read;
+    }
+  }
+}
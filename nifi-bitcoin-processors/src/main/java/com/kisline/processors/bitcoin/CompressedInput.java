@@ -0,0 +1,115 @@
+package com.kisline.processors.bitcoin;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.zip.GZIPInputStream;
+
+// 압축된 input 을 session.read 안에서 바로 풀어서 parser 에 넘긴다. (content repository 에 풀린 사본을 쓰지 않음)
+final class CompressedInput {
+
+  enum Compression {
+    AUTO, // mime.type 을 보고, 모르는 type 이면 앞의 magic bytes 를 본다.
+    NONE,
+    GZIP,
+    BZIP2,
+    ZSTD
+  }
+
+  // 압축을 풀 때는 작은 read 가 많으므로 원본 stream 에서 크게 읽어 둔다.
+  static final int BUFFER_SIZE = 256 * 1024;
+
+  private static final int MAGIC_SIZE = 4;
+
+  private CompressedInput() {}
+
+  static InputStream open(
+      final InputStream in, final Compression setting, final String mimeType)
+      throws IOException {
+    if (setting == Compression.NONE) {
+      return in;
+    }
+
+    final PushbackInputStream peekable = new PushbackInputStream(in, MAGIC_SIZE);
+    Compression compression = setting;
+    if (compression == Compression.AUTO) {
+      compression = fromMimeType(mimeType);
+    }
+    if (compression == Compression.AUTO) {
+      compression = fromMagic(peekable);
+    }
+
+    switch (compression) {
+      case GZIP:
+        // 여러 member 를 이어 붙인 gzip 도 끝까지 읽는다.
+        return new GZIPInputStream(peekable, BUFFER_SIZE);
+      case BZIP2:
+        return new BZip2CompressorInputStream(
+            new BufferedInputStream(peekable, BUFFER_SIZE), true);
+      case ZSTD:
+        return new ZstdCompressorInputStream(new BufferedInputStream(peekable, BUFFER_SIZE));
+      default:
+        return peekable;
+    }
+  }
+
+  // 확장자가 압축 형식이면 떼어낸다. (data.csv.gz -> data.csv)
+  static String stripExtension(final String filename) {
+    final String lower = filename.toLowerCase();
+    for (final String extension : new String[] {".gz", ".gzip", ".bz2", ".zst"}) {
+      if (lower.endsWith(extension)) {
+        return filename.substring(0, filename.length() - extension.length());
+      }
+    }
+    return filename;
+  }
+
+  // AUTO 는 모르는 type
+  private static Compression fromMimeType(final String mimeType) {
+    if (mimeType == null) {
+      return Compression.AUTO;
+    }
+
+    switch (mimeType) {
+      case "application/gzip":
+      case "application/x-gzip":
+        return Compression.GZIP;
+      case "application/bzip2":
+      case "application/x-bzip2":
+        return Compression.BZIP2;
+      case "application/zstd":
+        return Compression.ZSTD;
+      default:
+        return Compression.AUTO;
+    }
+  }
+
+  private static Compression fromMagic(final PushbackInputStream in) throws IOException {
+    final byte[] magic = new byte[MAGIC_SIZE];
+    int length = 0;
+    int read;
+    while (length < magic.length && (read = in.read(magic, length, magic.length - length)) > 0) {
+      length += read;
+    }
+    in.unread(magic, 0, length);
+
+    if (length >= 2 && (magic[0] & 0xFF) == 0x1F && (magic[1] & 0xFF) == 0x8B) {
+      return Compression.GZIP;
+    }
+    if (length >= 3 && magic[0] == 'B' && magic[1] == 'Z' && magic[2] == 'h') {
+      return Compression.BZIP2;
+    }
+    if (length >= 4
+        && (magic[0] & 0xFF) == 0x28
+        && (magic[1] & 0xFF) == 0xB5
+        && (magic[2] & 0xFF) == 0x2F
+        && (magic[3] & 0xFF) == 0xFD) {
+      return Compression.ZSTD;
+    }
+    return Compression.NONE;
+  }
+}
@@ -2,9 +2,17 @@ package com.kisline.processors.bitcoin;
 
 import com.kisline.dbcp.HikariCPService;
 import org.apache.nifi.components.PropertyDescriptor;
+import org.apache.nifi.components.ValidationContext;
+import org.apache.nifi.components.ValidationResult;
+import org.apache.nifi.components.Validator;
+import org.apache.nifi.expression.ExpressionLanguageScope;
 import org.apache.nifi.processor.Relationship;
 import org.apache.nifi.processor.util.StandardValidators;
+import org.apache.nifi.serialization.RecordReaderFactory;
+import org.apache.nifi.serialization.RecordSetWriterFactory;
 
+import java.time.DateTimeException;
+import java.time.ZoneId;
 import java.util.*;
 
 // Enum은 인스턴스가 여러 개 생기지 않도록 확실하게 보장해주고 복잡한 직렬화나 리플렉션 상황에서도 직렬화가 자동으로 지원된다는 이점이 있다.
@@ -12,22 +20,89 @@ import java.util.*;
 public enum ConfigUtil {
   INSTANCE;
 
+  // java.time.ZoneId 로 읽을 수 있는 값인지
+  private static final Validator ZONE_ID_VALIDATOR =
+      new Validator() {
+        @Override
+        public ValidationResult validate(
+            final String subject, final String input, final ValidationContext context) {
+          String explanation = null;
+          try {
+            ZoneId.of(input);
+          } catch (DateTimeException e) {
+            explanation = "Not a valid time zone: " + e.getMessage();
+          }
+          return new ValidationResult.Builder()
+              .subject(subject)
+              .input(input)
+              .valid(explanation == null)
+              .explanation(explanation)
+              .build();
+        }
+      };
+
   private static List<PropertyDescriptor> properties;
   private static Set<Relationship> relationships;
+  // BitcoinHistoryRecordProcessor 용
+  private static List<PropertyDescriptor> recordProperties;
+  private static Set<Relationship> recordRelationships;
 
   public static final String JSON_RECORDS = "JSON records created";
-  public static final String XML_RECORDS = "JSON records created";
+  public static final String XML_RECORDS = "XML records created";
+  public static final String AVRO_RECORDS = "Avro records created";
+  public static final String RECORDS_WRITTEN = "Records written";
+  public static final String RECORD_COUNT_ATTRIBUTE = "record.count";
   public static final String RECORDS_READ = "CSV records read";
+  public static final String DB_RECORDS = "DB records inserted";
+  public static final String RECORDS_SKIPPED = "CSV records skipped";
+  public static final String DB_DUPLICATES = "DB duplicate records skipped";
+  public static final String DB_UPDATED = "DB records updated";
+  public static final String RECORDS_VALID = "CSV records valid";
+  public static final String RECORDS_INVALID = "CSV records invalid";
+  public static final String DB_BATCHES = "DB batches sent";
+  public static final String DB_REJECTED = "DB records rejected";
+  public static final String INVALID_RECORDS = "Invalid records routed";
+  public static final String PARSE_MILLIS = "Parse time (ms)";
+  public static final String SERIALIZE_MILLIS = "Serialize time (ms)";
+  public static final String DB_MILLIS = "DB time (ms)";
+
+  // 실패한 FlowFile 에 붙이는 처리 통계
+  public static final String ROWS_READ_ATTRIBUTE = "bitcoin.rows.read";
+  public static final String ROWS_VALID_ATTRIBUTE = "bitcoin.rows.valid";
+  public static final String ROWS_INVALID_ATTRIBUTE = "bitcoin.rows.invalid";
+  public static final String ROWS_PER_SECOND_ATTRIBUTE = "bitcoin.rows.per.second";
+  public static final String PARSE_MILLIS_ATTRIBUTE = "bitcoin.parse.millis";
+  public static final String SERIALIZE_MILLIS_ATTRIBUTE = "bitcoin.serialize.millis";
+  public static final String DB_MILLIS_ATTRIBUTE = "bitcoin.db.millis";
+
+  // Partition By 일 때 output FlowFile 에 붙이는 partition 정보
+  public static final String PARTITION_KEY = "partition.key";
+  public static final String PARTITION_PATH = "partition.path";
+  public static final String PARTITION_START = "partition.start";
+  public static final String PARTITION_END = "partition.end";
+  public static final String PARTITION_YEAR = "partition.year";
+  public static final String PARTITION_MONTH = "partition.month";
+  public static final String PARTITION_DAY = "partition.day";
+  public static final String PARTITION_HOUR = "partition.hour";
+
+  // 마지막으로 load 한 timestamp 를 보관하는 state key (Watermark Key 가 있으면 뒤에 ".<key>")
+  public static final String WATERMARK_STATE_KEY = "watermark";
 
   public static final String JSON_MIME_TYPE = "application/json";
+  public static final String NDJSON_MIME_TYPE = "application/x-ndjson";
   public static final String XML_MIME_TYPE = "text/xml";
+  public static final String AVRO_MIME_TYPE = "application/avro-binary";
+  public static final String GZIP_MIME_TYPE = "application/gzip";
+  public static final String ZSTD_MIME_TYPE = "application/zstd";
+  public static final String CSV_MIME_TYPE = "text/csv";
+  public static final String XML_ROOT_ELEMENT = "histories";
 
   public static final PropertyDescriptor OUTPUT =
       new PropertyDescriptor.Builder()
           .name("output")
           .displayName("Output format")
-          .description("Format of output FlowFiles")
-          .allowableValues("XML", "JSON", "DB", "ALL")
+          .description("Format of output FlowFiles. ALL writes XML, JSON and DB (not AVRO)")
+          .allowableValues("XML", "JSON", "AVRO", "DB", "ALL")
           .defaultValue("ALL")
           .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
           .required(true)
@@ -42,6 +117,384 @@ public enum ConfigUtil {
           .required(true)
           .build();
 
+  public static final PropertyDescriptor BATCH_SIZE =
+      new PropertyDescriptor.Builder()
+          .name("batch-size")
+          .displayName("Batch Size")
+          .description("Number of rows sent to the database in a single JDBC batch")
+          .defaultValue("1000")
+          .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+          .required(true)
+          .build();
+
+  public static final PropertyDescriptor COMMIT_INTERVAL =
+      new PropertyDescriptor.Builder()
+          .name("commit-interval")
+          .displayName("Commit Interval")
+          .description(
+              "When to commit DB rows: once per FlowFile (all or nothing) or after every batch")
+          .allowableValues("FLOWFILE", "BATCH")
+          .defaultValue("FLOWFILE")
+          .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+          .required(true)
+          .build();
+
+  public static final PropertyDescriptor DB_LOAD_STRATEGY =
+      new PropertyDescriptor.Builder()
+          .name("db-load-strategy")
+          .displayName("DB Load Strategy")
+          .description(
+              "How rows are sent to the DB. BATCH sends single-row inserts as a JDBC batch. "
+                  + "BULK uses COPY on PostgreSQL and multi-row INSERT ... VALUES statements on other databases")
+          .allowableValues("BATCH", "BULK")
+          .defaultValue("BATCH")
+          .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+          .required(true)
+          .build();
+
+  public static final PropertyDescriptor DUPLICATE_HANDLING =
+      new PropertyDescriptor.Builder()
+          .name("duplicate-handling")
+          .displayName("Duplicate Handling")
+          .description(
+              "What to do with rows whose history_time is already in the DB. INSERT inserts every row, "
+                  + "IGNORE drops rows that already exist and UPSERT updates the existing row")
+          .allowableValues("INSERT", "IGNORE", "UPSERT")
+          .defaultValue("INSERT")
+          .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+          .required(true)
+          .build();
+
+  public static final PropertyDescriptor DEDUP_CACHE_SIZE =
+      new PropertyDescriptor.Builder()
+          .name("dedup-cache-size")
+          .displayName("Dedup Cache Size")
+          .description(
+              "Number of recently written timestamps kept in memory so duplicates are detected "
+                  + "without querying the DB. Used with IGNORE and UPSERT")
+          .defaultValue("1000000")
+          .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+          .required(true)
+          .build();
+
+  public static final PropertyDescriptor ASYNC_DB_WRITES =
+      new PropertyDescriptor.Builder()
+          .name("async-db-writes")
+          .displayName("Async DB Writes")
+          .description(
+              "Write DB rows on dedicated writer threads so DB latency does not stall parsing and "
+                  + "JSON/XML output. The input FlowFile is still removed only after its rows are committed")
+          .allowableValues("true", "false")
+          .defaultValue("false")
+          .addValidator(StandardValidators.BOOLEAN_VALIDATOR)
+          .required(true)
+          .build();
+
+  public static final PropertyDescriptor DB_WRITER_THREADS =
+      new PropertyDescriptor.Builder()
+          .name("db-writer-threads")
+          .displayName("DB Writer Threads")
+          .description(
+              "Number of writer threads used with Async DB Writes. Each thread writes one FlowFile at a time")
+          .defaultValue("2")
+          .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+          .required(true)
+          .build();
+
+  public static final PropertyDescriptor DB_QUEUE_SIZE =
+      new PropertyDescriptor.Builder()
+          .name("db-queue-size")
+          .displayName("DB Queue Size")
+          .description(
+              "Maximum number of parsed batches (up to 1024 rows each) of a FlowFile waiting for "
+                  + "its DB writer. Parsing waits when the queue is full")
+          .defaultValue("16")
+          .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+          .required(true)
+          .build();
+
+  public static final PropertyDescriptor OUTPUT_GRANULARITY =
+      new PropertyDescriptor.Builder()
+          .name("output-granularity")
+          .displayName("Output Granularity")
+          .description(
+              "How records are grouped into output FlowFiles: one per RECORD, one per BATCH of "
+                  + "'Records Per FlowFile' records, one per input FLOWFILE, or one per TIME "
+                  + "bucket. Avro output is written per BATCH when RECORD is selected")
+          .allowableValues("RECORD", "BATCH", "FLOWFILE", "TIME")
+          .defaultValue("RECORD")
+          .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+          .required(true)
+          .build();
+
+  public static final PropertyDescriptor RECORDS_PER_FLOWFILE =
+      new PropertyDescriptor.Builder()
+          .name("records-per-flowfile")
+          .displayName("Records Per FlowFile")
+          .description("Maximum number of records in an output FlowFile when granularity is BATCH")
+          .defaultValue("10000")
+          .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+          .required(true)
+          .build();
+
+  public static final PropertyDescriptor TIME_BUCKET =
+      new PropertyDescriptor.Builder()
+          .name("time-bucket")
+          .displayName("Time Bucket")
+          .description(
+              "Length of the timestamp interval covered by an output FlowFile when granularity is TIME")
+          .defaultValue("1 hour")
+          .addValidator(StandardValidators.TIME_PERIOD_VALIDATOR)
+          .required(true)
+          .build();
+
+  public static final PropertyDescriptor JSON_FORMAT =
+      new PropertyDescriptor.Builder()
+          .name("json-format")
+          .displayName("JSON Format")
+          .description(
+              "Layout of JSON FlowFiles holding more than one record: a JSON ARRAY or "
+                  + "newline-delimited JSON (NDJSON)")
+          .allowableValues("ARRAY", "NDJSON")
+          .defaultValue("ARRAY")
+          .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+          .required(true)
+          .build();
+
+  public static final PropertyDescriptor OUTPUT_COMPRESSION =
+      new PropertyDescriptor.Builder()
+          .name("output-compression")
+          .displayName("Output Compression")
+          .description(
+              "Compress JSON and XML FlowFiles while they are written. mime.type and the filename "
+                  + "extension (.gz, .zst) are set to match")
+          .allowableValues("NONE", "GZIP", "ZSTD")
+          .defaultValue("NONE")
+          .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+          .required(true)
+          .build();
+
+  public static final PropertyDescriptor OUTPUT_COMPRESSION_LEVEL =
+      new PropertyDescriptor.Builder()
+          .name("output-compression-level")
+          .displayName("Output Compression Level")
+          .description("Compression level, 1 (fastest) to 9 for GZIP and 1 to 22 for ZSTD")
+          .defaultValue("1")
+          .addValidator(StandardValidators.createLongValidator(1, 22, true))
+          .required(true)
+          .build();
+
+  public static final PropertyDescriptor OUTPUT_TIME_ZONE =
+      new PropertyDescriptor.Builder()
+          .name("output-time-zone")
+          .displayName("Output Time Zone")
+          .description(
+              "Time zone of the timestamps written to JSON and XML FlowFiles, as a region "
+                  + "(Asia/Seoul, UTC) or an offset (+09:00, Z). "
+                  + "If not set, the time zone of the NiFi JVM is used")
+          .addValidator(ZONE_ID_VALIDATOR)
+          .required(false)
+          .build();
+
+  public static final PropertyDescriptor PARTITION_BY =
+      new PropertyDescriptor.Builder()
+          .name("partition-by")
+          .displayName("Partition By")
+          .description(
+              "Never let an output FlowFile span more than one HOUR or DAY of Output Time Zone, "
+                  + "and add partition.key, partition.path (year=/month=/day=/hour=), "
+                  + "partition.start, partition.end and partition.year/month/day/hour attributes "
+                  + "so PutHDFS, PutS3Object and the like can write time-partitioned directories")
+          .allowableValues("NONE", "HOUR", "DAY")
+          .defaultValue("NONE")
+          .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+          .required(true)
+          .build();
+
+  public static final PropertyDescriptor DB_PARTITION_TABLES =
+      new PropertyDescriptor.Builder()
+          .name("db-partition-tables")
+          .displayName("DB Partition Tables")
+          .description(
+              "With Partition By, insert DB rows into one table per period instead of "
+                  + "bitcoin_history: bitcoin_history_yyyyMMdd for DAY and "
+                  + "bitcoin_history_yyyyMMddHH for HOUR, in Output Time Zone. "
+                  + "Missing tables are created with the bitcoin_history columns")
+          .allowableValues("true", "false")
+          .defaultValue("false")
+          .addValidator(StandardValidators.BOOLEAN_VALIDATOR)
+          .required(true)
+          .build();
+
+  public static final PropertyDescriptor OFF_HEAP_BATCHES =
+      new PropertyDescriptor.Builder()
+          .name("off-heap-batches")
+          .displayName("Off-Heap Batches")
+          .description(
+              "Keep the columnar buffers of parsed rows in direct (off-heap) memory instead of the Java heap")
+          .allowableValues("true", "false")
+          .defaultValue("false")
+          .addValidator(StandardValidators.BOOLEAN_VALIDATOR)
+          .required(true)
+          .build();
+
+  public static final PropertyDescriptor PARSE_PARALLELISM =
+      new PropertyDescriptor.Builder()
+          .name("parse-parallelism")
+          .displayName("Parse Parallelism")
+          .description(
+              "Number of threads used to parse a large CSV FlowFile in chunks. "
+                  + "1 parses the whole FlowFile on the task's own thread")
+          .defaultValue("1")
+          .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+          .required(true)
+          .build();
+
+  public static final PropertyDescriptor PARALLEL_MIN_SIZE =
+      new PropertyDescriptor.Builder()
+          .name("parallel-min-size")
+          .displayName("Parallel Parse Threshold")
+          .description(
+              "FlowFiles smaller than this are parsed on a single thread even if Parse Parallelism is greater than 1")
+          .defaultValue("64 MB")
+          .addValidator(StandardValidators.DATA_SIZE_VALIDATOR)
+          .required(true)
+          .build();
+
+  public static final PropertyDescriptor INPUT_COMPRESSION =
+      new PropertyDescriptor.Builder()
+          .name("input-compression")
+          .displayName("Input Compression")
+          .description(
+              "Compression of the input CSV, decompressed while it is read. AUTO uses the "
+                  + "mime.type attribute, or the magic bytes at the start of the content if the "
+                  + "type is unknown")
+          .allowableValues("AUTO", "NONE", "GZIP", "BZIP2", "ZSTD")
+          .defaultValue("AUTO")
+          .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+          .required(true)
+          .build();
+
+  public static final PropertyDescriptor INPUT_SOURCE =
+      new PropertyDescriptor.Builder()
+          .name("input-source")
+          .displayName("Input Source")
+          .description(
+              "Where the CSV is read from. CONTENT reads the FlowFile content. LOCAL_FILE "
+                  + "memory-maps the local file named by Local File Path and parses it in place, "
+                  + "so large files (e.g. listed by ListFile) are not copied into the content "
+                  + "repository first")
+          .allowableValues("CONTENT", "LOCAL_FILE")
+          .defaultValue("CONTENT")
+          .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+          .required(true)
+          .build();
+
+  public static final PropertyDescriptor LOCAL_FILE_PATH =
+      new PropertyDescriptor.Builder()
+          .name("local-file-path")
+          .displayName("Local File Path")
+          .description("Path of the CSV file to read when Input Source is LOCAL_FILE")
+          .defaultValue("${absolute.path}/${filename}")
+          .expressionLanguageSupported(ExpressionLanguageScope.FLOWFILE_ATTRIBUTES)
+          .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+          .required(true)
+          .build();
+
+  public static final PropertyDescriptor INVALID_ROW_HANDLING =
+      new PropertyDescriptor.Builder()
+          .name("invalid-row-handling")
+          .displayName("Invalid Row Handling")
+          .description(
+              "What to do with CSV rows that cannot be parsed and rows the DB rejects with a data "
+                  + "or constraint error. FAILURE routes the whole input to failure. ROUTE writes "
+                  + "and commits every other row and sends the bad rows, with their line numbers "
+                  + "and errors, to invalid as one CSV per input. Errors that are not caused by a "
+                  + "row (connection, missing table, ...) still route the whole input to failure")
+          .allowableValues("FAILURE", "ROUTE")
+          .defaultValue("FAILURE")
+          .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+          .required(true)
+          .build();
+
+  public static final PropertyDescriptor CANDLE_INTERVAL =
+      new PropertyDescriptor.Builder()
+          .name("candle-interval")
+          .displayName("Candle Interval")
+          .description(
+              "Roll the minute bars up into OHLCV candles of this length (e.g. 5 mins, 1 hour, 1 day) "
+                  + "and output only the candles. Intervals are aligned to the epoch in UTC. "
+                  + "If not set, every minute bar is output as is")
+          .addValidator(StandardValidators.TIME_PERIOD_VALIDATOR)
+          .required(false)
+          .build();
+
+  public static final PropertyDescriptor INDICATOR_WINDOW =
+      new PropertyDescriptor.Builder()
+          .name("indicator-window")
+          .displayName("Indicator Window")
+          .description(
+              "If set, every JSON, XML and Avro record gets rolling indicators over this many "
+                  + "bars (candles when Candle Interval is set): sma and ema of the close, vwap, "
+                  + "and volatility as the standard deviation of log returns. Volatility uses "
+                  + "this many returns, so it spans one bar more than sma and vwap. "
+                  + "Windows start over with every input FlowFile, so the first bars of each "
+                  + "input are computed over fewer bars. Indicators are not written to the DB")
+          .addValidator(StandardValidators.POSITIVE_INTEGER_VALIDATOR)
+          .required(false)
+          .build();
+
+  public static final PropertyDescriptor INCREMENTAL_LOAD =
+      new PropertyDescriptor.Builder()
+          .name("incremental-load")
+          .displayName("Incremental Load")
+          .description(
+              "Keep the last loaded Timestamp in processor state and skip rows at or below it, "
+                  + "so re-dropping an updated export only outputs the new bars. With Candle "
+                  + "Interval, the last candle of an input is held back and the watermark stops "
+                  + "before it, so it is output once, complete, by a later load")
+          .allowableValues("true", "false")
+          .defaultValue("false")
+          .addValidator(StandardValidators.BOOLEAN_VALIDATOR)
+          .required(true)
+          .build();
+
+  public static final PropertyDescriptor WATERMARK_KEY =
+      new PropertyDescriptor.Builder()
+          .name("watermark-key")
+          .displayName("Watermark Key")
+          .description(
+              "Identifies the source whose watermark is used when Incremental Load is enabled. "
+                  + "FlowFiles with the same key share a watermark. If not set, all input shares one watermark. "
+                  + "Concurrent tasks on one node load the same key one at a time; in a cluster, "
+                  + "run the processor on the primary node only so that two nodes never load the "
+                  + "same key at once")
+          .expressionLanguageSupported(ExpressionLanguageScope.FLOWFILE_ATTRIBUTES)
+          .addValidator(StandardValidators.NON_EMPTY_VALIDATOR)
+          .required(false)
+          .build();
+
+  // BitcoinHistoryRecordProcessor 용
+  public static final PropertyDescriptor RECORD_READER =
+      new PropertyDescriptor.Builder()
+          .name("record-reader")
+          .displayName("Record Reader")
+          .description(
+              "Reads Bitstamp minute bars. Records need the Timestamp, Open, High, Low, Close, "
+                  + "Volume_(BTC), Volume_(Currency) and Weighted_Price fields")
+          .identifiesControllerService(RecordReaderFactory.class)
+          .required(true)
+          .build();
+
+  public static final PropertyDescriptor RECORD_WRITER =
+      new PropertyDescriptor.Builder()
+          .name("record-writer")
+          .displayName("Record Writer")
+          .description("Writes BitcoinHistory records (timestamp, open, close, high, low, ...)")
+          .identifiesControllerService(RecordSetWriterFactory.class)
+          .required(true)
+          .build();
+
   // Relationship -> the states options for terminated situation
   public static final Relationship XML =
       new Relationship.Builder()
@@ -55,10 +508,32 @@ public enum ConfigUtil {
           .description("Files process as JSON successfully routed here")
           .build();
 
+  public static final Relationship AVRO =
+      new Relationship.Builder()
+          .name("avro")
+          .description("Files process as Avro successfully routed here")
+          .build();
+
   public static final Relationship DB =
       new Relationship.Builder()
           .name("db")
-          .description("Files process as DB successfully routed here")
+          .description(
+              "One summary FlowFile per input written to the DB: row counts and timings as "
+                  + "attributes, no content")
+          .build();
+
+  public static final Relationship INVALID =
+      new Relationship.Builder()
+          .name("invalid")
+          .description(
+              "With Invalid Row Handling ROUTE, one CSV per input of the rows that could not be "
+                  + "parsed or were rejected by the DB: line number, error and row")
+          .build();
+
+  public static final Relationship SUCCESS =
+      new Relationship.Builder()
+          .name("success")
+          .description("Files written by the Record Writer successfully routed here")
           .build();
 
   public static final Relationship FAILURE =
@@ -71,14 +546,55 @@ public enum ConfigUtil {
     List<PropertyDescriptor> properties = new ArrayList<>();
     properties.add(OUTPUT);
     properties.add(DS_PROP);
+    properties.add(BATCH_SIZE);
+    properties.add(COMMIT_INTERVAL);
+    properties.add(DB_LOAD_STRATEGY);
+    properties.add(DUPLICATE_HANDLING);
+    properties.add(DEDUP_CACHE_SIZE);
+    properties.add(ASYNC_DB_WRITES);
+    properties.add(DB_WRITER_THREADS);
+    properties.add(DB_QUEUE_SIZE);
+    properties.add(OUTPUT_GRANULARITY);
+    properties.add(RECORDS_PER_FLOWFILE);
+    properties.add(TIME_BUCKET);
+    properties.add(JSON_FORMAT);
+    properties.add(OUTPUT_COMPRESSION);
+    properties.add(OUTPUT_COMPRESSION_LEVEL);
+    properties.add(OUTPUT_TIME_ZONE);
+    properties.add(PARTITION_BY);
+    properties.add(DB_PARTITION_TABLES);
+    properties.add(OFF_HEAP_BATCHES);
+    properties.add(PARSE_PARALLELISM);
+    properties.add(PARALLEL_MIN_SIZE);
+    properties.add(INPUT_COMPRESSION);
+    properties.add(INPUT_SOURCE);
+    properties.add(LOCAL_FILE_PATH);
+    properties.add(INVALID_ROW_HANDLING);
+    properties.add(CANDLE_INTERVAL);
+    properties.add(INDICATOR_WINDOW);
+    properties.add(INCREMENTAL_LOAD);
+    properties.add(WATERMARK_KEY);
     ConfigUtil.properties = Collections.unmodifiableList(properties);
 
     Set<Relationship> relationships = new HashSet<>();
     relationships.add(JSON);
     relationships.add(XML);
+    relationships.add(AVRO);
     relationships.add(DB);
+    relationships.add(INVALID);
     relationships.add(FAILURE);
     ConfigUtil.relationships = Collections.unmodifiableSet(relationships);
+
+    List<PropertyDescriptor> recordProperties = new ArrayList<>();
+    recordProperties.add(RECORD_READER);
+    recordProperties.add(RECORD_WRITER);
+    recordProperties.add(CANDLE_INTERVAL);
+    ConfigUtil.recordProperties = Collections.unmodifiableList(recordProperties);
+
+    Set<Relationship> recordRelationships = new HashSet<>();
+    recordRelationships.add(SUCCESS);
+    recordRelationships.add(FAILURE);
+    ConfigUtil.recordRelationships = Collections.unmodifiableSet(recordRelationships);
   }
 
   public static List<PropertyDescriptor> getProperties() {
@@ -88,4 +604,12 @@ public enum ConfigUtil {
   public static Set<Relationship> getRelationships() {
     return relationships;
   }
+
+  public static List<PropertyDescriptor> getRecordProperties() {
+    return recordProperties;
+  }
+
+  public static Set<Relationship> getRecordRelationships() {
+    return recordRelationships;
+  }
 }
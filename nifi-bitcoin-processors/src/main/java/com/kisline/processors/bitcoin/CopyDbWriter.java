@@ -0,0 +1,111 @@
+package com.kisline.processors.bitcoin;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+// PostgreSQL 의 COPY ... FROM STDIN 으로 row 를 CSV 로 흘려 넣는다. (insert 보다 훨씬 빠른 bulk load 경로)
+// PostgreSQL driver 는 DBCP service 쪽 classloader 에 있으므로 CopyManager 는 reflection 으로 찾는다.
+class CopyDbWriter extends DbWriter {
+
+  private final Object copyManager;
+  private final Method copyIn;
+  private final StringBuilder rows = new StringBuilder();
+
+  private CopyDbWriter(
+      final PreparedStatement stmt,
+      final int batchSize,
+      final boolean commitPerBatch,
+      final Object copyManager,
+      final Method copyIn)
+      throws SQLException {
+    super(stmt, batchSize, commitPerBatch);
+    this.copyManager = copyManager;
+    this.copyIn = copyIn;
+  }
+
+  // PostgreSQL connection 이 아니거나 CopyManager 를 쓸 수 없으면 null
+  static CopyDbWriter create(
+      final PreparedStatement stmt, final int batchSize, final boolean commitPerBatch)
+      throws SQLException {
+    final Connection connection = stmt.getConnection();
+    if (!"PostgreSQL".equals(connection.getMetaData().getDatabaseProductName())) {
+      return null;
+    }
+
+    try {
+      // pool 의 proxy 가 아닌 driver 의 connection 에서 classloader 를 얻는다.
+      final ClassLoader loader = connection.unwrap(Connection.class).getClass().getClassLoader();
+      final Class<?> baseConnection =
+          Class.forName("org.postgresql.core.BaseConnection", true, loader);
+      final Class<?> copyManagerClass =
+          Class.forName("org.postgresql.copy.CopyManager", true, loader);
+      final Constructor<?> constructor = copyManagerClass.getConstructor(baseConnection);
+      final Object copyManager = constructor.newInstance(connection.unwrap(baseConnection));
+      final Method copyIn = copyManagerClass.getMethod("copyIn", String.class, Reader.class);
+      return new CopyDbWriter(stmt, batchSize, commitPerBatch, copyManager, copyIn);
+    } catch (ReflectiveOperationException | SQLException e) {
+      return null;
+    }
+  }
+
+  // COPY 는 statement 없이 table 이름만 바꾼다.
+  @Override
+  PreparedStatement prepare(final String table) {
+    return null;
+  }
+
+  @Override
+  void addRow(final HistoryBatch batch, final int i) {
+    // timestamp without time zone 은 setTimestamp 와 같게 JVM time zone 의 local 시각으로 넣는다.
+    rows.append(new Timestamp(batch.getTimestamp(i) * 1000L))
+        .append(',')
+        .append(batch.getOpen(i))
+        .append(',')
+        .append(batch.getHigh(i))
+        .append(',')
+        .append(batch.getLow(i))
+        .append(',')
+        .append(batch.getClose(i))
+        .append(',')
+        .append(batch.getBtcVolume(i))
+        .append(',')
+        .append(batch.getUsdVolume(i))
+        .append(',')
+        .append(batch.getWeightedPrice(i))
+        .append('\n');
+  }
+
+  @Override
+  int send() throws SQLException {
+    try {
+      final Object count =
+          copyIn.invoke(copyManager, copySql(table), new StringReader(rows.toString()));
+      return ((Number) count).intValue();
+    } catch (IllegalAccessException e) {
+      throw new SQLException("Could not run COPY", e);
+    } catch (InvocationTargetException e) {
+      final Throwable cause = e.getCause();
+      throw cause instanceof SQLException
+          ? (SQLException) cause
+          : new SQLException("Could not run COPY", cause);
+    } finally {
+      rows.setLength(0);
+    }
+  }
+
+  private static String copySql(final String table) {
+    return "COPY " + table + " (" + COLUMNS + ") FROM STDIN WITH (FORMAT csv)";
+  }
+
+  @Override
+  void discard() {
+    rows.setLength(0);
+  }
+}
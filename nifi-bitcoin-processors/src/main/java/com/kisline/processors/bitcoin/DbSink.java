@@ -0,0 +1,12 @@
+package com.kisline.processors.bitcoin;
+
+import java.sql.SQLException;
+
+// 한 FlowFile 의 row 를 DB 에 쓰는 단계. 끝나면 finish (commit) 또는 rollback 중 하나를 부른다.
+interface DbSink extends BatchHandler {
+
+  // 남은 row 를 보내고 commit 한 뒤 insert 된 row 수를 돌려준다.
+  int finish() throws SQLException;
+
+  void rollback();
+}
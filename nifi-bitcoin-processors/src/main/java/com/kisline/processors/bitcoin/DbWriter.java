@@ -0,0 +1,331 @@
+package com.kisline.processors.bitcoin;
+
+import com.codahale.metrics.Timer;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// bitcoin_history 에 row 를 모아서 보낸다. -> row 마다 DB round trip 하지 않음
+// 어떻게 보내는지(JDBC batch, multi-row VALUES, COPY)는 하위 class 가 정한다.
+// 하나의 FlowFile 을 처리하는 동안만 사용하고 thread 간에 공유하지 않는다.
+// isolateRejectedRows 를 부르면 batch 마다 savepoint 를 두고, batch 가 실패하면 그 batch 만 row 하나씩 다시 보내서
+// data / 제약 조건 오류가 난 row 만 골라낸다. (나머지 row 는 그대로 commit)
+// setPartitionTables 를 부르면 row 마다 기간별 table 을 골라서 넣는다. table 이 바뀌면 모아 둔 row 를 먼저 보낸다.
+abstract class DbWriter implements DbSink {
+
+  static final String TABLE = "bitcoin_history";
+
+  static final String COLUMNS =
+      "history_time, open_price, high, low, closed_price, btc_volume, usd_volume, weighted_price";
+
+  static final String INSERT_SQL = insertSql(TABLE);
+
+  final Connection connection;
+  // 지금 table 에 insert 하는 statement (partition table 이면 이 writer 가 prepare 한 것)
+  PreparedStatement stmt;
+  // 지금 row 를 넣는 table
+  String table = TABLE;
+  // 빌려 온 bitcoin_history statement (닫지 않음)
+  private final PreparedStatement baseStmt;
+  private final int batchSize;
+  private final boolean commitPerBatch;
+
+  private int pending;
+  private int inserted;
+  // 중복 처리 (null 이면 모두 insert)
+  private DuplicateFilter duplicateFilter;
+  // 아직 보내지 않은 row 의 timestamp. 보낸 뒤 duplicateFilter 에 알린다. (filter 가 없으면 null)
+  private long[] pendingTimestamps;
+  // DB 작업에 쓴 시간과 보낸 batch 수, batch 하나의 latency (null 이면 기록하지 않음)
+  private long nanos;
+  private int batches;
+  private Timer batchTimer;
+  // 아직 보내지 않은 row 의 사본. batch 가 실패하면 여기서 row 하나씩 다시 보낸다. (null 이면 골라내지 않음)
+  private HistoryBatch pendingRows;
+  private final List<String> rejectedRows = new ArrayList<>();
+  private final List<String> rejectErrors = new ArrayList<>();
+  // DB Partition Tables 가 아니면 null
+  private PartitionTables partitionTables;
+
+  DbWriter(final PreparedStatement stmt, final int batchSize, final boolean commitPerBatch)
+      throws SQLException {
+    this.connection = stmt.getConnection();
+    this.stmt = stmt;
+    this.baseStmt = stmt;
+    this.batchSize = batchSize;
+    this.commitPerBatch = commitPerBatch;
+  }
+
+  void setDuplicateFilter(final DuplicateFilter duplicateFilter) {
+    this.duplicateFilter = duplicateFilter;
+    this.pendingTimestamps = new long[batchSize];
+  }
+
+  DuplicateFilter getDuplicateFilter() {
+    return duplicateFilter;
+  }
+
+  void setBatchTimer(final Timer batchTimer) {
+    this.batchTimer = batchTimer;
+  }
+
+  static String insertSql(final String table) {
+    return "insert into " + table + " (" + COLUMNS + ") values (?, ?, ?, ?, ?, ?, ?, ?)";
+  }
+
+  void setPartitionTables(final PartitionTables partitionTables) {
+    this.partitionTables = partitionTables;
+  }
+
+  // Invalid Row Handling 이 ROUTE 일 때
+  void isolateRejectedRows() {
+    this.pendingRows = HistoryBatch.allocate(batchSize, false);
+  }
+
+  // DB 가 거부한 row (InvalidRowSink.format) 와 그 이유. finish 뒤에 읽는다.
+  List<String> getRejectedRows() {
+    return rejectedRows;
+  }
+
+  List<String> getRejectErrors() {
+    return rejectErrors;
+  }
+
+  long getNanos() {
+    return nanos;
+  }
+
+  int getBatches() {
+    return batches;
+  }
+
+  @Override
+  public void handle(final HistoryBatch batch) throws SQLException {
+    add(batch);
+  }
+
+  void add(final HistoryBatch batch) throws SQLException {
+    final long start = System.nanoTime();
+    try {
+      addRows(batch);
+    } finally {
+      nanos += System.nanoTime() - start;
+    }
+  }
+
+  private void addRows(final HistoryBatch batch) throws SQLException {
+    final HistoryBatch rows = duplicateFilter != null ? duplicateFilter.filter(batch) : batch;
+    for (int i = 0; i < rows.size(); i++) {
+      if (partitionTables != null) {
+        final String rowTable = partitionTables.tableOf(rows.getTimestamp(i));
+        if (!rowTable.equals(table)) {
+          // statement 는 table 하나에만 쓸 수 있다.
+          if (pending > 0) {
+            flush();
+          }
+          useTable(rowTable);
+        }
+      }
+      addRow(rows, i);
+      if (pendingTimestamps != null) {
+        pendingTimestamps[pending] = rows.getTimestamp(i);
+      }
+      if (pendingRows != null) {
+        pendingRows.add(
+            rows.getTimestamp(i),
+            rows.getOpen(i),
+            rows.getHigh(i),
+            rows.getLow(i),
+            rows.getClose(i),
+            rows.getBtcVolume(i),
+            rows.getUsdVolume(i),
+            rows.getWeightedPrice(i));
+      }
+
+      if (++pending >= batchSize) {
+        flush();
+        if (commitPerBatch) {
+          commit();
+        }
+      }
+    }
+  }
+
+  // 남은 row 를 보내고 commit 한 뒤 실제로 insert 된 row 수를 돌려준다.
+  @Override
+  public int finish() throws SQLException {
+    final long start = System.nanoTime();
+    try {
+      if (pending > 0) {
+        flush();
+      }
+      commit();
+      return inserted;
+    } finally {
+      closeFilter();
+      closeTableStatement();
+      nanos += System.nanoTime() - start;
+    }
+  }
+
+  @Override
+  public void rollback() {
+    try {
+      discard();
+      pending = 0;
+      if (pendingRows != null) {
+        pendingRows.clear();
+      }
+      rejectedRows.clear();
+      rejectErrors.clear();
+      if (!connection.getAutoCommit()) {
+        connection.rollback();
+      }
+    } catch (SQLException e) {
+      // 이미 실패한 상황이므로 원래 예외를 가리지 않도록 무시한다.
+    } finally {
+      if (duplicateFilter != null) {
+        duplicateFilter.rolledBack();
+      }
+      closeFilter();
+      closeTableStatement();
+    }
+  }
+
+  // row 하나를 보낼 준비를 한다. (아직 DB 로 보내지 않음)
+  abstract void addRow(HistoryBatch batch, int i) throws SQLException;
+
+  // table 에 insert 하는 statement 를 prepare 한다. (statement 를 쓰지 않는 방식이면 null)
+  abstract PreparedStatement prepare(String table) throws SQLException;
+
+  // 모아 둔 row 를 DB 로 보내고 insert 된 row 수를 돌려준다.
+  abstract int send() throws SQLException;
+
+  // 모아 둔 row 를 보내지 않고 버린다.
+  abstract void discard() throws SQLException;
+
+  // executeBatch 결과를 insert 된 row 수로 바꾼다. 한 statement 가 rowsPerStatement 개 row 를 넣는다.
+  static int countInserted(final int[] results, final int rowsPerStatement) {
+    int count = 0;
+    for (final int result : results) {
+      if (result > 0) {
+        count += result;
+      } else if (result == Statement.SUCCESS_NO_INFO) {
+        // driver 가 건수를 알려주지 않는 경우 statement 가 모두 성공한 것으로 본다.
+        count += rowsPerStatement;
+      }
+    }
+    return count;
+  }
+
+  // 한 row 의 값 때문에 난 오류를 돌려준다. (SQLSTATE class 22 data exception, 23 integrity constraint violation)
+  // 그 밖의 오류 (connection, 권한, table 없음 ...) 는 row 를 골라내도 소용없으므로 null -> FlowFile 을 실패시킨다.
+  // driver 에 따라 batch 오류는 next exception 에 row 별 오류를 달아 준다. (Derby XJ208 등)
+  static SQLException findRowError(final SQLException e) {
+    for (SQLException next = e; next != null; next = next.getNextException()) {
+      final String state = next.getSQLState();
+      if (state != null && (state.startsWith("22") || state.startsWith("23"))) {
+        return next;
+      }
+    }
+    return null;
+  }
+
+  private void flush() throws SQLException {
+    final long start = System.nanoTime();
+    if (pendingRows != null) {
+      sendIsolated();
+    } else {
+      inserted += send();
+    }
+    if (duplicateFilter != null) {
+      duplicateFilter.sent(pendingTimestamps, pending);
+    }
+    pending = 0;
+    batches++;
+    if (batchTimer != null) {
+      batchTimer.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  private void sendIsolated() throws SQLException {
+    final Savepoint savepoint = connection.setSavepoint();
+    try {
+      inserted += send();
+      connection.releaseSavepoint(savepoint);
+    } catch (SQLException e) {
+      // 어느 row 때문인지 모르므로 batch 를 되돌리고 row 하나씩 다시 보낸다. (실패한 batch 에만 드는 비용)
+      connection.rollback(savepoint);
+      discard();
+      for (int i = 0; i < pendingRows.size(); i++) {
+        sendRow(i);
+      }
+    } finally {
+      pendingRows.clear();
+    }
+  }
+
+  private void sendRow(final int i) throws SQLException {
+    final Savepoint savepoint = connection.setSavepoint();
+    try {
+      addRow(pendingRows, i);
+      inserted += send();
+      connection.releaseSavepoint(savepoint);
+    } catch (SQLException e) {
+      connection.rollback(savepoint);
+      discard();
+      final SQLException rowError = findRowError(e);
+      if (rowError == null) {
+        throw e;
+      }
+      rejectedRows.add(InvalidRowSink.format(pendingRows, i));
+      rejectErrors.add(rowError.getSQLState() + " " + rowError.getMessage());
+      if (duplicateFilter != null) {
+        duplicateFilter.rejected(pendingRows.getTimestamp(i));
+      }
+    }
+  }
+
+  private void useTable(final String rowTable) throws SQLException {
+    closeTableStatement();
+    stmt = prepare(rowTable);
+    table = rowTable;
+  }
+
+  // 이 writer 가 prepare 한 statement 를 닫고 빌려 온 statement 로 돌아간다.
+  private void closeTableStatement() {
+    if (stmt != baseStmt) {
+      try {
+        if (stmt != null) {
+          stmt.close();
+        }
+      } catch (SQLException e) {
+        // 닫는 중 오류는 무시한다. (connection 은 pool 에서 관리)
+      }
+      stmt = baseStmt;
+      table = TABLE;
+    }
+  }
+
+  private void commit() throws SQLException {
+    if (!connection.getAutoCommit()) {
+      connection.commit();
+    }
+    // commit 된 timestamp 만 cache 에 넣는다.
+    if (duplicateFilter != null) {
+      duplicateFilter.committed();
+    }
+  }
+
+  private void closeFilter() {
+    if (duplicateFilter != null) {
+      duplicateFilter.close();
+    }
+  }
+}
@@ -0,0 +1,235 @@
+package com.kisline.processors.bitcoin;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+// history_time 기준으로 이미 DB 에 있는 row 를 insert 하지 않는다.
+// IGNORE 는 그냥 버리고, UPSERT 는 기존 row 를 update 한다.
+// cache 에 있으면 DB 에 묻지 않고, 없으면 batch 단위로 한 번에 (in (...)) 확인한다.
+// 아직 DB 로 보내지 않은 row 와 같은 timestamp 가 다시 나오면 처음 row 를 쓴다.
+// 이미 보낸 row 와 같으면 DB 에 있는 row 로 본다. (IGNORE 는 버리고 UPSERT 는 update)
+// cache 에는 DB 로 보내고 commit 까지 된 timestamp 만 넣는다. -> rollback 된 row 가 다음 시도에서 걸러지지 않음
+// DB Partition Tables 면 timestamp 마다 그 기간의 table 에서 찾고 update 한다. (timestamp 는 한 table 에만 들어감)
+final class DuplicateFilter {
+
+  // in (...) 하나에 넣는 timestamp 수
+  private static final int LOOKUP_SIZE = 500;
+
+  private final Connection connection;
+  private final TimestampCache cache;
+  private final boolean upsert;
+  // DB Partition Tables 가 아니면 null
+  private PartitionTables partitionTables;
+
+  // insert 하기로 했지만 DbWriter 가 아직 DB 로 보내지 않은 timestamp (batch size 정도로 묶임)
+  private final LongHashSet unsent = new LongHashSet(HistoryBatch.DEFAULT_CAPACITY);
+  // 지난 commit 뒤에 DB 로 보냈거나 DB 에 있다고 확인한 timestamp. commit 되면 cache 로 옮긴다.
+  // cache 한 세대보다 많으면 더 넣지 않는다. (cache 는 DB 조회를 줄이는 용도일 뿐)
+  private final LongHashSet known = new LongHashSet(HistoryBatch.DEFAULT_CAPACITY);
+  private final LongHashSet existing = new LongHashSet(HistoryBatch.DEFAULT_CAPACITY);
+  // 보낸 row 중 DB 가 거부한 timestamp -> known 에 넣지 않는다. (다시 보낸 row 가 중복으로 걸러지지 않도록)
+  private final LongHashSet rejected = new LongHashSet(0);
+  private final long[] lookup = new long[LOOKUP_SIZE];
+  private String lookupTable;
+  private HistoryBatch rows;
+  private PreparedStatement update;
+  private String updateTable;
+  private int pendingUpdates;
+
+  private int duplicates;
+  private int updated;
+
+  DuplicateFilter(final Connection connection, final TimestampCache cache, final boolean upsert) {
+    this.connection = connection;
+    this.cache = cache;
+    this.upsert = upsert;
+  }
+
+  void setPartitionTables(final PartitionTables partitionTables) {
+    this.partitionTables = partitionTables;
+  }
+
+  static String updateSql(final String table) {
+    return "update "
+        + table
+        + " set open_price = ?, high = ?, low = ?, closed_price = ?, "
+        + "btc_volume = ?, usd_volume = ?, weighted_price = ? where history_time = ?";
+  }
+
+  // insert 할 row 만 남긴 batch 를 돌려준다. (돌려준 batch 는 다음 호출 때 재사용)
+  HistoryBatch filter(final HistoryBatch batch) throws SQLException {
+    if (rows == null || rows.capacity() < batch.size()) {
+      rows = HistoryBatch.allocate(Math.max(batch.size(), HistoryBatch.DEFAULT_CAPACITY), false);
+    }
+    rows.clear();
+    findExisting(batch);
+
+    for (int i = 0; i < batch.size(); i++) {
+      final long timestamp = batch.getTimestamp(i);
+      if (existing.contains(timestamp)) {
+        if (upsert) {
+          addUpdate(batch, i);
+        } else {
+          duplicates++;
+        }
+      } else if (!unsent.add(timestamp)) {
+        // 아직 보내지 않은 row 와 중복
+        duplicates++;
+      } else {
+        rows.add(
+            timestamp,
+            batch.getOpen(i),
+            batch.getHigh(i),
+            batch.getLow(i),
+            batch.getClose(i),
+            batch.getBtcVolume(i),
+            batch.getUsdVolume(i),
+            batch.getWeightedPrice(i));
+      }
+    }
+
+    executeUpdates();
+    return rows;
+  }
+
+  // DbWriter 가 insert 하지 못하고 골라낸 row
+  void rejected(final long timestamp) {
+    rejected.add(timestamp);
+  }
+
+  // DbWriter 가 timestamps 의 앞 count 개 row 를 DB 로 보낸 뒤에 부른다. (거부된 row 는 rejected 로 먼저 알려 줌)
+  void sent(final long[] timestamps, final int count) {
+    for (int i = 0; i < count; i++) {
+      unsent.remove(timestamps[i]);
+      if (!rejected.contains(timestamps[i])) {
+        remember(timestamps[i]);
+      }
+    }
+    rejected.clear();
+  }
+
+  // commit 된 뒤에 부른다. 아직 보내지 않은 row 는 다음 commit 까지 기다린다.
+  void committed() {
+    cache.addAll(known);
+    known.clear();
+  }
+
+  void rolledBack() {
+    unsent.clear();
+    known.clear();
+    rejected.clear();
+    pendingUpdates = 0;
+  }
+
+  void close() {
+    if (update != null) {
+      try {
+        update.close();
+      } catch (SQLException e) {
+        // 닫는 중 오류는 무시한다. (connection 은 pool 에서 관리)
+      }
+      update = null;
+    }
+  }
+
+  int getDuplicates() {
+    return duplicates;
+  }
+
+  int getUpdated() {
+    return updated;
+  }
+
+  private void executeUpdates() throws SQLException {
+    if (pendingUpdates > 0) {
+      updated += DbWriter.countInserted(update.executeBatch(), 1);
+      pendingUpdates = 0;
+    }
+  }
+
+  // batch 중 DB (또는 cache) 에 이미 있는 timestamp 를 existing 에 모은다.
+  private void findExisting(final HistoryBatch batch) throws SQLException {
+    existing.clear();
+    int count = 0;
+    for (int i = 0; i < batch.size(); i++) {
+      final long timestamp = batch.getTimestamp(i);
+      if (cache.contains(timestamp) || known.contains(timestamp)) {
+        existing.add(timestamp);
+      } else if (!unsent.contains(timestamp)) {
+        // in (...) 하나는 table 하나에만 묻는다.
+        final String table = tableOf(timestamp);
+        if (count > 0 && !table.equals(lookupTable)) {
+          query(count);
+          count = 0;
+        }
+        lookupTable = table;
+        lookup[count++] = timestamp;
+        if (count == LOOKUP_SIZE) {
+          query(count);
+          count = 0;
+        }
+      }
+    }
+
+    if (count > 0) {
+      query(count);
+    }
+  }
+
+  private void query(final int count) throws SQLException {
+    final StringBuilder sql =
+        new StringBuilder("select history_time from " + lookupTable + " where history_time in (");
+    for (int i = 0; i < count; i++) {
+      sql.append(i == 0 ? "?" : ", ?");
+    }
+    sql.append(')');
+
+    try (final PreparedStatement stmt = connection.prepareStatement(sql.toString())) {
+      for (int i = 0; i < count; i++) {
+        stmt.setTimestamp(i + 1, new Timestamp(lookup[i] * 1000L));
+      }
+      try (final ResultSet rs = stmt.executeQuery()) {
+        while (rs.next()) {
+          final long timestamp = rs.getTimestamp(1).getTime() / 1000L;
+          existing.add(timestamp);
+          remember(timestamp);
+        }
+      }
+    }
+  }
+
+  private void remember(final long timestamp) {
+    if (known.size() < cache.getGenerationSize()) {
+      known.add(timestamp);
+    }
+  }
+
+  private String tableOf(final long timestamp) throws SQLException {
+    return partitionTables != null ? partitionTables.tableOf(timestamp) : DbWriter.TABLE;
+  }
+
+  private void addUpdate(final HistoryBatch batch, final int i) throws SQLException {
+    final String table = tableOf(batch.getTimestamp(i));
+    if (update != null && !table.equals(updateTable)) {
+      executeUpdates();
+      close();
+    }
+    if (update == null) {
+      update = connection.prepareStatement(updateSql(table));
+      updateTable = table;
+    }
+    update.setDouble(1, batch.getOpen(i));
+    update.setDouble(2, batch.getHigh(i));
+    update.setDouble(3, batch.getLow(i));
+    update.setDouble(4, batch.getClose(i));
+    update.setDouble(5, batch.getBtcVolume(i));
+    update.setDouble(6, batch.getUsdVolume(i));
+    update.setDouble(7, batch.getWeightedPrice(i));
+    update.setTimestamp(8, new Timestamp(batch.getTimestamp(i) * 1000L));
+    update.addBatch();
+    pendingUpdates++;
+  }
+}
@@ -0,0 +1,67 @@
+package com.kisline.processors.bitcoin;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+// input FlowFile 하나에서 나온 batch 를 켜진 output 모두에 보낸다. (JSON, XML, Avro ..., DB)
+// input 은 한 번만 읽고 format 마다 한 번씩만 serialize 한다.
+// FlowFile sink 들은 scratch buffer 하나를 같이 쓴다. sink 가 batch 를 다 쓰면 buffer 를 자기
+// FlowFile 로 비우므로 다음 sink 는 빈 buffer 에서 시작한다. -> output 이 늘어도 buffer 는 하나
+final class FanOut implements BatchHandler {
+
+  private final ByteArrayOutputStream buffer = FlowFileSink.newBuffer();
+  private final List<FlowFileSink> sinks = new ArrayList<>();
+  // DB output 이 아니면 null
+  private final DbSink db;
+  private final TriggerMetrics stats;
+
+  FanOut(final DbSink db, final TriggerMetrics stats) {
+    this.db = db;
+    this.stats = stats;
+  }
+
+  // sink 를 만들 때 넘겨줄 buffer
+  ByteArrayOutputStream getBuffer() {
+    return buffer;
+  }
+
+  <T extends FlowFileSink> T add(final T sink) {
+    sinks.add(sink);
+    return sink;
+  }
+
+  @Override
+  public void handle(final HistoryBatch batch) throws IOException, SQLException {
+    if (batch.isEmpty()) {
+      return;
+    }
+
+    final long start = System.nanoTime();
+    for (final FlowFileSink sink : sinks) {
+      sink.write(batch);
+    }
+    stats.serializeNanos += System.nanoTime() - start;
+
+    if (db != null) {
+      db.handle(batch);
+    }
+  }
+
+  // 마지막 FlowFile 들을 transfer 한다. DB 는 호출한 쪽이 finish / rollback 한다.
+  void close() throws IOException {
+    final long start = System.nanoTime();
+    for (final FlowFileSink sink : sinks) {
+      sink.close();
+    }
+    stats.serializeNanos += System.nanoTime() - start;
+  }
+
+  void abort() {
+    for (final FlowFileSink sink : sinks) {
+      sink.abort();
+    }
+  }
+}
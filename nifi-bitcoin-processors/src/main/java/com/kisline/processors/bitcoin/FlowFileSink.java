@@ -0,0 +1,249 @@
+package com.kisline.processors.bitcoin;
+
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipParameters;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorOutputStream;
+import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.flowfile.attributes.CoreAttributes;
+import org.apache.nifi.processor.ProcessSession;
+import org.apache.nifi.processor.Relationship;
+import org.apache.nifi.processor.io.OutputStreamCallback;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+// input FlowFile 하나에서 나오는 한 가지 format 의 output FlowFile 들을 만든다.
+// record 는 작은 buffer 에 serialize 하고 buffer 가 차면 session.append 로 FlowFile 에 이어 쓴다.
+// -> output FlowFile 이 아무리 커도 memory 는 buffer 크기만큼만 쓴다.
+// write(batch) 가 끝나면 buffer 는 비어 있으므로 여러 sink 가 buffer 하나를 같이 쓸 수 있다. (FanOut)
+// 압축할 때는 encoder 와 buffer 사이에 compressor 를 둔다. (buffer 에는 압축된 byte 가 쌓임)
+// Partition By 면 granularity 와 상관없이 partition 이 바뀔 때도 FlowFile 을 나누고 partition.* attribute 를 붙인다.
+abstract class FlowFileSink {
+
+  private static final int FLUSH_SIZE = 64 * 1024;
+
+  private final ProcessSession session;
+  private final FlowFile parent;
+  private final OutputSettings settings;
+  private final String baseName;
+  private final ByteArrayOutputStream buffer;
+  // 나누지 않으면 null
+  private final TimePartitioner partitioner;
+
+  // 지금 FlowFile 의 compressor (압축하지 않으면 null)
+  private OutputStream compressor;
+  private FlowFile current;
+  private int currentRecords;
+  private long currentBucket;
+  private long currentPartition;
+  private int flowFileCount;
+  private int recordCount;
+
+  FlowFileSink(
+      final ProcessSession session,
+      final FlowFile parent,
+      final OutputSettings settings,
+      final String baseName,
+      final ByteArrayOutputStream buffer) {
+    this.session = session;
+    this.parent = parent;
+    this.settings = settings;
+    this.baseName = baseName;
+    this.buffer = buffer;
+    this.partitioner = settings.newPartitioner();
+  }
+
+  static ByteArrayOutputStream newBuffer() {
+    return new ByteArrayOutputStream(FLUSH_SIZE + 8192);
+  }
+
+  protected abstract Relationship getRelationship();
+
+  protected abstract String getExtension();
+
+  protected abstract String getMimeType();
+
+  protected abstract String getRecordCountAttribute();
+
+  // single 이면 record 하나만 들어가는 문서 (array/root element 없이)
+  protected abstract void startDocument(OutputStream out, boolean single) throws IOException;
+
+  // batch 의 i 번째 row 를 쓴다.
+  protected abstract void writeRecord(HistoryBatch batch, int i) throws IOException;
+
+  protected abstract void endDocument() throws IOException;
+
+  // encoder 내부 buffer 에 남은 내용을 out 으로 밀어낸다.
+  protected abstract void flushEncoder() throws IOException;
+
+  // 이 sink 가 FlowFile 을 나누는 단위
+  protected OutputSettings.Granularity getGranularity() {
+    return settings.getGranularity();
+  }
+
+  // Output Compression 을 적용할지 (자체 압축이 있는 format 은 false)
+  protected boolean isCompressible() {
+    return true;
+  }
+
+  void write(final HistoryBatch batch) throws IOException {
+    for (int i = 0; i < batch.size(); i++) {
+      write(batch, i);
+    }
+    // 다음 sink 가 buffer 를 쓸 수 있도록 비운다.
+    if (current != null) {
+      drain();
+    }
+  }
+
+  private void write(final HistoryBatch batch, final int i) throws IOException {
+    final long timestamp = batch.getTimestamp(i);
+    final long bucket = settings.bucketOf(timestamp);
+    final long partition = partitioner != null ? partitioner.startOf(timestamp) : 0;
+    if (current != null && (isFull(bucket) || partition != currentPartition)) {
+      finishFlowFile();
+    }
+
+    if (current == null) {
+      current = session.create(parent);
+      currentBucket = bucket;
+      currentPartition = partition;
+      startDocument(openCompressor(), getGranularity() == OutputSettings.Granularity.RECORD);
+    }
+
+    writeRecord(batch, i);
+    currentRecords++;
+    recordCount++;
+
+    if (getGranularity() == OutputSettings.Granularity.RECORD) {
+      finishFlowFile();
+    } else if (buffer.size() >= FLUSH_SIZE) {
+      drain();
+    }
+  }
+
+  // 마지막 FlowFile 을 마무리해서 transfer 한다.
+  void close() throws IOException {
+    if (current != null) {
+      finishFlowFile();
+    }
+  }
+
+  // 실패 시 쓰다 만 FlowFile 을 버린다.
+  void abort() {
+    closeCompressor();
+    if (current != null) {
+      session.remove(current);
+      current = null;
+    }
+    buffer.reset();
+  }
+
+  int getRecordCount() {
+    return recordCount;
+  }
+
+  private boolean isFull(final long bucket) {
+    switch (getGranularity()) {
+      case BATCH:
+        return currentRecords >= settings.getRecordsPerFlowFile();
+      case TIME:
+        return bucket != currentBucket;
+      default:
+        return false;
+    }
+  }
+
+  private void drain() throws IOException {
+    flushEncoder();
+    if (buffer.size() == 0) {
+      return;
+    }
+
+    current =
+        session.append(
+            current,
+            new OutputStreamCallback() {
+
+              @Override
+              public void process(OutputStream out) throws IOException {
+                buffer.writeTo(out);
+              }
+            });
+    buffer.reset();
+  }
+
+  private void finishFlowFile() throws IOException {
+    endDocument();
+    if (compressor != null) {
+      // 남은 block 과 trailer 를 buffer 에 쓴다.
+      compressor.close();
+      compressor = null;
+    }
+    drain();
+
+    final Map<String, String> attrs = new HashMap<>();
+    String filename = baseName + (++flowFileCount) + "." + getExtension();
+    String mimeType = getMimeType();
+    switch (getCompression()) {
+      case GZIP:
+        filename += ".gz";
+        mimeType = ConfigUtil.GZIP_MIME_TYPE;
+        break;
+      case ZSTD:
+        filename += ".zst";
+        mimeType = ConfigUtil.ZSTD_MIME_TYPE;
+        break;
+      default:
+        break;
+    }
+    attrs.put(CoreAttributes.FILENAME.key(), filename);
+    attrs.put(CoreAttributes.MIME_TYPE.key(), mimeType);
+    attrs.put(getRecordCountAttribute(), String.valueOf(currentRecords));
+    if (partitioner != null) {
+      attrs.putAll(partitioner.attributes(currentPartition));
+    }
+
+    session.transfer(session.putAllAttributes(current, attrs), getRelationship());
+
+    current = null;
+    currentRecords = 0;
+  }
+
+  private OutputSettings.Compression getCompression() {
+    return isCompressible() ? settings.getCompression() : OutputSettings.Compression.NONE;
+  }
+
+  // 새 FlowFile 의 document 를 쓸 stream
+  private OutputStream openCompressor() throws IOException {
+    switch (getCompression()) {
+      case GZIP:
+        final GzipParameters parameters = new GzipParameters();
+        parameters.setCompressionLevel(Math.min(settings.getCompressionLevel(), 9));
+        compressor = new GzipCompressorOutputStream(buffer, parameters);
+        return compressor;
+      case ZSTD:
+        compressor = new ZstdCompressorOutputStream(buffer, settings.getCompressionLevel());
+        return compressor;
+      default:
+        return buffer;
+    }
+  }
+
+  // compressor 의 native memory 를 돌려준다.
+  private void closeCompressor() {
+    if (compressor == null) {
+      return;
+    }
+
+    try {
+      compressor.close();
+    } catch (IOException e) {
+      // 버릴 content 이므로 무시한다.
+    }
+    compressor = null;
+  }
+}
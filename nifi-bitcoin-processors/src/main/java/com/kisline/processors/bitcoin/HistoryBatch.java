@@ -0,0 +1,220 @@
+package com.kisline.processors.bitcoin;
+
+import com.kisline.processors.bitcoin.com.kisline.processors.base.model.BitcoinHistory;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+// BitcoinHistory 여러 건을 column 별 primitive 배열로 들고 있는 batch.
+// row 마다 객체(ZonedDateTime, BitcoinHistory)를 만들지 않으므로 대용량 load 시 GC 부담이 적다.
+// offHeap 이면 column 을 direct buffer 에 둔다. (heap 이면 long[] / double[] 을 감싼 buffer)
+// indicators 로 만든 batch 에만 rolling indicator column 이 있다. (RollingIndicators 가 채움)
+final class HistoryBatch {
+
+  static final int DEFAULT_CAPACITY = 1024;
+
+  private final int capacity;
+  private final LongBuffer timestamps;
+  private final DoubleBuffer open;
+  private final DoubleBuffer high;
+  private final DoubleBuffer low;
+  private final DoubleBuffer close;
+  private final DoubleBuffer btcVolume;
+  private final DoubleBuffer usdVolume;
+  private final DoubleBuffer weightedPrice;
+  // indicator 가 없는 batch 면 null
+  private final DoubleBuffer sma;
+  private final DoubleBuffer ema;
+  private final DoubleBuffer vwap;
+  private final DoubleBuffer volatility;
+
+  private int size;
+
+  private HistoryBatch(final int capacity, final boolean offHeap, final boolean indicators) {
+    this.capacity = capacity;
+    this.timestamps = offHeap ? directLongs(capacity) : LongBuffer.wrap(new long[capacity]);
+    this.open = doubles(capacity, offHeap);
+    this.high = doubles(capacity, offHeap);
+    this.low = doubles(capacity, offHeap);
+    this.close = doubles(capacity, offHeap);
+    this.btcVolume = doubles(capacity, offHeap);
+    this.usdVolume = doubles(capacity, offHeap);
+    this.weightedPrice = doubles(capacity, offHeap);
+    this.sma = indicators ? doubles(capacity, offHeap) : null;
+    this.ema = indicators ? doubles(capacity, offHeap) : null;
+    this.vwap = indicators ? doubles(capacity, offHeap) : null;
+    this.volatility = indicators ? doubles(capacity, offHeap) : null;
+  }
+
+  static HistoryBatch allocate(final int capacity, final boolean offHeap) {
+    return new HistoryBatch(capacity, offHeap, false);
+  }
+
+  static HistoryBatch allocate(
+      final int capacity, final boolean offHeap, final boolean indicators) {
+    return new HistoryBatch(capacity, offHeap, indicators);
+  }
+
+  private static LongBuffer directLongs(final int capacity) {
+    return ByteBuffer.allocateDirect(capacity * 8).order(ByteOrder.nativeOrder()).asLongBuffer();
+  }
+
+  private static DoubleBuffer doubles(final int capacity, final boolean offHeap) {
+    return offHeap
+        ? ByteBuffer.allocateDirect(capacity * 8).order(ByteOrder.nativeOrder()).asDoubleBuffer()
+        : DoubleBuffer.wrap(new double[capacity]);
+  }
+
+  // parser 가 방금 읽은 row 를 추가한다.
+  void add(final BitstampCsvParser parser) {
+    add(
+        parser.getTimestamp(),
+        parser.get(BitstampCsvParser.OPEN),
+        parser.get(BitstampCsvParser.HIGH),
+        parser.get(BitstampCsvParser.LOW),
+        parser.get(BitstampCsvParser.CLOSE),
+        parser.get(BitstampCsvParser.BTC_VOLUME),
+        parser.get(BitstampCsvParser.USD_VOLUME),
+        parser.get(BitstampCsvParser.WEIGHTED_PRICE));
+  }
+
+  void add(
+      final long timestamp,
+      final double open,
+      final double high,
+      final double low,
+      final double close,
+      final double btcVolume,
+      final double usdVolume,
+      final double weightedPrice) {
+    final int i = size++;
+    this.timestamps.put(i, timestamp);
+    this.open.put(i, open);
+    this.high.put(i, high);
+    this.low.put(i, low);
+    this.close.put(i, close);
+    this.btcVolume.put(i, btcVolume);
+    this.usdVolume.put(i, usdVolume);
+    this.weightedPrice.put(i, weightedPrice);
+  }
+
+  // 다른 batch 의 row 를 모두 뒤에 붙인다.
+  void addAll(final HistoryBatch other) {
+    for (int i = 0; i < other.size(); i++) {
+      add(
+          other.getTimestamp(i),
+          other.getOpen(i),
+          other.getHigh(i),
+          other.getLow(i),
+          other.getClose(i),
+          other.getBtcVolume(i),
+          other.getUsdVolume(i),
+          other.getWeightedPrice(i));
+    }
+  }
+
+  // i 번째 row 의 indicator 값. indicator column 이 있는 batch 에서만 부른다.
+  void setIndicators(
+      final int i,
+      final double sma,
+      final double ema,
+      final double vwap,
+      final double volatility) {
+    this.sma.put(i, sma);
+    this.ema.put(i, ema);
+    this.vwap.put(i, vwap);
+    this.volatility.put(i, volatility);
+  }
+
+  int capacity() {
+    return capacity;
+  }
+
+  int size() {
+    return size;
+  }
+
+  boolean isFull() {
+    return size == capacity;
+  }
+
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  void clear() {
+    size = 0;
+  }
+
+  // epoch seconds
+  long getTimestamp(final int i) {
+    return timestamps.get(i);
+  }
+
+  double getOpen(final int i) {
+    return open.get(i);
+  }
+
+  double getHigh(final int i) {
+    return high.get(i);
+  }
+
+  double getLow(final int i) {
+    return low.get(i);
+  }
+
+  double getClose(final int i) {
+    return close.get(i);
+  }
+
+  double getBtcVolume(final int i) {
+    return btcVolume.get(i);
+  }
+
+  double getUsdVolume(final int i) {
+    return usdVolume.get(i);
+  }
+
+  double getWeightedPrice(final int i) {
+    return weightedPrice.get(i);
+  }
+
+  boolean hasIndicators() {
+    return sma != null;
+  }
+
+  double getSma(final int i) {
+    return sma.get(i);
+  }
+
+  double getEma(final int i) {
+    return ema.get(i);
+  }
+
+  double getVwap(final int i) {
+    return vwap.get(i);
+  }
+
+  double getVolatility(final int i) {
+    return volatility.get(i);
+  }
+
+  // 객체 model 이 필요한 곳(JAXB/Jackson 등)을 위한 변환
+  BitcoinHistory toModel(final int i, final ZoneId zone) {
+    final BitcoinHistory history = new BitcoinHistory();
+    history.setTimestamp(ZonedDateTime.ofInstant(Instant.ofEpochSecond(getTimestamp(i)), zone));
+    history.setOpen(getOpen(i));
+    history.setHigh(getHigh(i));
+    history.setLow(getLow(i));
+    history.setClose(getClose(i));
+    history.setBtcVolume(getBtcVolume(i));
+    history.setUsdVolume(getUsdVolume(i));
+    history.setWeightedPrice(getWeightedPrice(i));
+    return history;
+  }
+}
@@ -0,0 +1,156 @@
+package com.kisline.processors.bitcoin;
+
+import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.flowfile.attributes.CoreAttributes;
+import org.apache.nifi.processor.ProcessSession;
+import org.apache.nifi.processor.io.OutputStreamCallback;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Invalid Row Handling 이 ROUTE 일 때 형식이 틀린 row 와 DB 가 거부한 row 를 input 당 FlowFile 하나로 모은다.
+// "Line,Error,Row" CSV. DB 가 거부한 row 는 line 이 비어 있고 row 는 Bitstamp CSV 형식으로 다시 쓴다.
+// FlowFileSink 처럼 buffer 가 차면 session.append 로 이어 쓴다. -> 잘못된 row 가 많아도 memory 는 일정함
+// onTrigger thread 에서만 쓴다.
+final class InvalidRowSink {
+
+  static final String HEADER = "Line,Error,Row\n";
+
+  private static final int FLUSH_SIZE = 64 * 1024;
+
+  private final ProcessSession session;
+  private final FlowFile parent;
+  private final String baseName;
+  private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(FLUSH_SIZE + 8192);
+  private final StringBuilder line = new StringBuilder();
+
+  private FlowFile current;
+  private int rowCount;
+
+  InvalidRowSink(final ProcessSession session, final FlowFile parent, final String baseName) {
+    this.session = session;
+    this.parent = parent;
+    this.baseName = baseName;
+  }
+
+  // CSV 의 lineNumber 번째 line 을 parsing 하지 못함
+  void malformed(final long lineNumber, final String error, final String row) {
+    write(String.valueOf(lineNumber), error, row);
+  }
+
+  // DbWriter 가 골라낸 row 를 붙인다. (DB 를 finish 한 뒤)
+  void addRejected(final DbWriter dbWriter) {
+    final List<String> rows = dbWriter.getRejectedRows();
+    final List<String> errors = dbWriter.getRejectErrors();
+    for (int i = 0; i < rows.size(); i++) {
+      write("", errors.get(i), rows.get(i));
+    }
+  }
+
+  int getRowCount() {
+    return rowCount;
+  }
+
+  // 모은 row 가 있으면 invalid relationship 으로 보낸다.
+  void close() {
+    if (current == null) {
+      return;
+    }
+    drain();
+
+    final Map<String, String> attrs = new HashMap<>();
+    attrs.put(CoreAttributes.FILENAME.key(), baseName + ".invalid.csv");
+    attrs.put(CoreAttributes.MIME_TYPE.key(), ConfigUtil.CSV_MIME_TYPE);
+    attrs.put(ConfigUtil.INVALID_RECORDS, String.valueOf(rowCount));
+    session.transfer(session.putAllAttributes(current, attrs), ConfigUtil.INVALID);
+    current = null;
+  }
+
+  // input 전체가 실패로 가면 invalid 는 보내지 않는다.
+  void abort() {
+    if (current != null) {
+      session.remove(current);
+      current = null;
+    }
+    buffer.reset();
+  }
+
+  // DB 에 넣으려던 row 를 input 과 같은 column 순서의 CSV line 으로
+  static String format(final HistoryBatch batch, final int i) {
+    return new StringBuilder()
+        .append(batch.getTimestamp(i))
+        .append(',')
+        .append(batch.getOpen(i))
+        .append(',')
+        .append(batch.getHigh(i))
+        .append(',')
+        .append(batch.getLow(i))
+        .append(',')
+        .append(batch.getClose(i))
+        .append(',')
+        .append(batch.getBtcVolume(i))
+        .append(',')
+        .append(batch.getUsdVolume(i))
+        .append(',')
+        .append(batch.getWeightedPrice(i))
+        .toString();
+  }
+
+  private void write(final String lineNumber, final String error, final String row) {
+    if (current == null) {
+      current = session.create(parent);
+      line.append(HEADER);
+    }
+
+    line.append(lineNumber).append(',');
+    quote(error != null ? error : "");
+    line.append(',');
+    quote(row);
+    line.append('\n');
+
+    final byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+    buffer.write(bytes, 0, bytes.length);
+    line.setLength(0);
+    rowCount++;
+
+    if (buffer.size() >= FLUSH_SIZE) {
+      drain();
+    }
+  }
+
+  // 값 안의 '"' 는 두 번 쓴다. (RFC 4180)
+  private void quote(final String value) {
+    line.append('"');
+    for (int i = 0; i < value.length(); i++) {
+      final char c = value.charAt(i);
+      if (c == '"') {
+        line.append('"');
+      }
+      line.append(c);
+    }
+    line.append('"');
+  }
+
+  private void drain() {
+    if (buffer.size() == 0) {
+      return;
+    }
+
+    current =
+        session.append(
+            current,
+            new OutputStreamCallback() {
+
+              @Override
+              public void process(OutputStream out) throws IOException {
+                buffer.writeTo(out);
+              }
+            });
+    buffer.reset();
+  }
+}
@@ -0,0 +1,115 @@
+package com.kisline.processors.bitcoin;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.processor.ProcessSession;
+import org.apache.nifi.processor.Relationship;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+// output FlowFile 하나를 JsonGenerator 하나로 streaming 해서 쓴다. (JSON array 또는 NDJSON)
+// field 이름과 순서는 BitcoinHistory 의 Jackson mapping 과 같다.
+class JsonSink extends FlowFileSink {
+
+  private final JsonFactory factory;
+  private final OutputSettings.JsonFormat format;
+  private final TimestampFormatter timestampFormatter;
+  private final boolean indicators;
+
+  private JsonGenerator generator;
+  private boolean single;
+
+  JsonSink(
+      final ProcessSession session,
+      final FlowFile parent,
+      final OutputSettings settings,
+      final String baseName,
+      final ByteArrayOutputStream buffer,
+      final JsonFactory factory) {
+    super(session, parent, settings, baseName, buffer);
+    this.factory = factory;
+    this.format = settings.getJsonFormat();
+    this.timestampFormatter =
+        new TimestampFormatter(settings.getZone(), TimestampFormatter.Style.OFFSET);
+    this.indicators = settings.hasIndicators();
+  }
+
+  @Override
+  protected Relationship getRelationship() {
+    return ConfigUtil.JSON;
+  }
+
+  @Override
+  protected String getExtension() {
+    return !single && format == OutputSettings.JsonFormat.NDJSON ? "ndjson" : "json";
+  }
+
+  @Override
+  protected String getMimeType() {
+    return !single && format == OutputSettings.JsonFormat.NDJSON
+        ? ConfigUtil.NDJSON_MIME_TYPE
+        : ConfigUtil.JSON_MIME_TYPE;
+  }
+
+  @Override
+  protected String getRecordCountAttribute() {
+    return ConfigUtil.JSON_RECORDS;
+  }
+
+  @Override
+  protected void startDocument(final OutputStream out, final boolean single) throws IOException {
+    this.single = single;
+    generator = factory.createGenerator(out, JsonEncoding.UTF8);
+    // NDJSON 은 줄바꿈을 직접 쓰므로 root value 사이의 기본 구분자(공백)는 끈다.
+    generator.setRootValueSeparator(null);
+    if (!single && format == OutputSettings.JsonFormat.ARRAY) {
+      generator.writeStartArray();
+    }
+  }
+
+  @Override
+  protected void writeRecord(final HistoryBatch batch, final int i) throws IOException {
+    generator.writeStartObject();
+    // ISO_OFFSET_DATE_TIME 표기를 String 없이 generator buffer 로 바로 쓴다.
+    final int length = timestampFormatter.format(batch.getTimestamp(i));
+    generator.writeFieldName("timestamp");
+    generator.writeString(timestampFormatter.getBuffer(), 0, length);
+    generator.writeNumberField("open", batch.getOpen(i));
+    generator.writeNumberField("close", batch.getClose(i));
+    generator.writeNumberField("high", batch.getHigh(i));
+    generator.writeNumberField("low", batch.getLow(i));
+    generator.writeNumberField("btcVolume", batch.getBtcVolume(i));
+    generator.writeNumberField("weightedPrice", batch.getWeightedPrice(i));
+    generator.writeNumberField("usdVolume", batch.getUsdVolume(i));
+    if (indicators) {
+      generator.writeNumberField("sma", batch.getSma(i));
+      generator.writeNumberField("ema", batch.getEma(i));
+      generator.writeNumberField("vwap", batch.getVwap(i));
+      generator.writeNumberField("volatility", batch.getVolatility(i));
+    }
+    generator.writeEndObject();
+    if (!single && format == OutputSettings.JsonFormat.NDJSON) {
+      generator.writeRaw('\n');
+    }
+  }
+
+  @Override
+  protected void endDocument() throws IOException {
+    if (!single && format == OutputSettings.JsonFormat.ARRAY) {
+      generator.writeEndArray();
+    }
+    generator.close();
+    generator = null;
+  }
+
+  @Override
+  protected void flushEncoder() throws IOException {
+    if (generator != null) {
+      generator.flush();
+    }
+  }
+}
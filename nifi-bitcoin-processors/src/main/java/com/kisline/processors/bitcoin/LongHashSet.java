@@ -0,0 +1,113 @@
+package com.kisline.processors.bitcoin;
+
+import java.util.Arrays;
+
+// boxing 없이 long 을 담는 open addressing hash set. (Long.MIN_VALUE 는 빈 칸 표시라 담을 수 없음)
+// thread safe 하지 않다.
+final class LongHashSet {
+
+  private static final long EMPTY = Long.MIN_VALUE;
+
+  private long[] table;
+  private int mask;
+  private int size;
+
+  LongHashSet(final int expected) {
+    int length = 16;
+    while (length < expected * 2) {
+      length <<= 1;
+    }
+    allocate(length);
+  }
+
+  boolean contains(final long value) {
+    int i = index(value);
+    while (table[i] != EMPTY) {
+      if (table[i] == value) {
+        return true;
+      }
+      i = (i + 1) & mask;
+    }
+    return false;
+  }
+
+  // 새로 추가했으면 true
+  boolean add(final long value) {
+    int i = index(value);
+    while (table[i] != EMPTY) {
+      if (table[i] == value) {
+        return false;
+      }
+      i = (i + 1) & mask;
+    }
+    table[i] = value;
+    // load factor 0.5 를 넘으면 키운다.
+    if (++size * 2 > table.length) {
+      grow();
+    }
+    return true;
+  }
+
+  void addAll(final LongHashSet other) {
+    for (final long value : other.table) {
+      if (value != EMPTY) {
+        add(value);
+      }
+    }
+  }
+
+  // 있어서 지웠으면 true
+  boolean remove(final long value) {
+    int i = index(value);
+    while (table[i] != value) {
+      if (table[i] == EMPTY) {
+        return false;
+      }
+      i = (i + 1) & mask;
+    }
+
+    // 뒤에 이어진 값 중 빈 칸 자리로 와도 되는 값을 당겨서 탐색이 끊기지 않게 한다. (tombstone 없음)
+    int hole = i;
+    for (int j = (i + 1) & mask; table[j] != EMPTY; j = (j + 1) & mask) {
+      final int home = index(table[j]);
+      if (((j - home) & mask) >= ((j - hole) & mask)) {
+        table[hole] = table[j];
+        hole = j;
+      }
+    }
+    table[hole] = EMPTY;
+    size--;
+    return true;
+  }
+
+  int size() {
+    return size;
+  }
+
+  void clear() {
+    Arrays.fill(table, EMPTY);
+    size = 0;
+  }
+
+  private int index(final long value) {
+    final long h = value * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32)) & mask;
+  }
+
+  private void allocate(final int length) {
+    table = new long[length];
+    Arrays.fill(table, EMPTY);
+    mask = length - 1;
+  }
+
+  private void grow() {
+    final long[] old = table;
+    allocate(old.length * 2);
+    size = 0;
+    for (final long value : old) {
+      if (value != EMPTY) {
+        add(value);
+      }
+    }
+  }
+}
@@ -0,0 +1,98 @@
+package com.kisline.processors.bitcoin;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// local file 을 FileChannel.map 으로 열어 앞에서부터 읽는 stream.
+// content repository 로 가져오지 않고 page cache 에서 parser buffer 로 바로 복사한다. (read system call 없음)
+// map 한 번에 2GB 를 넘을 수 없으므로 region 단위로 차례로 map 한다.
+// 다 읽은 region 은 참조를 버리면 GC 때 unmap 된다. (Java 8 에는 명시적인 unmap 이 없음)
+final class MappedFileInputStream extends InputStream {
+
+  private static final long REGION_SIZE = 1L << 30;
+
+  private final FileChannel channel;
+  private final long size;
+  // 다음에 map 할 region 의 file 위치
+  private long next;
+  private MappedByteBuffer region;
+
+  MappedFileInputStream(final Path path) throws IOException {
+    this.channel = FileChannel.open(path, StandardOpenOption.READ);
+    try {
+      this.size = channel.size();
+    } catch (IOException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  long size() {
+    return size;
+  }
+
+  @Override
+  public int read() throws IOException {
+    if (!ensureRemaining()) {
+      return -1;
+    }
+    return region.get() & 0xFF;
+  }
+
+  @Override
+  public int read(final byte[] b, final int off, final int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    if (!ensureRemaining()) {
+      return -1;
+    }
+
+    final int n = Math.min(len, region.remaining());
+    region.get(b, off, n);
+    return n;
+  }
+
+  @Override
+  public long skip(final long n) throws IOException {
+    long skipped = 0;
+    while (skipped < n && ensureRemaining()) {
+      final int step = (int) Math.min(n - skipped, region.remaining());
+      region.position(region.position() + step);
+      skipped += step;
+    }
+    return skipped;
+  }
+
+  @Override
+  public int available() {
+    final long left = size - next + (region != null ? region.remaining() : 0);
+    return (int) Math.min(left, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public void close() throws IOException {
+    region = null;
+    channel.close();
+  }
+
+  // 지금 region 을 다 읽었으면 다음 region 을 map 한다. file 끝이면 false
+  private boolean ensureRemaining() throws IOException {
+    if (region != null && region.hasRemaining()) {
+      return true;
+    }
+    if (next >= size) {
+      region = null;
+      return false;
+    }
+
+    final long length = Math.min(REGION_SIZE, size - next);
+    region = channel.map(FileChannel.MapMode.READ_ONLY, next, length);
+    next += length;
+    return true;
+  }
+}
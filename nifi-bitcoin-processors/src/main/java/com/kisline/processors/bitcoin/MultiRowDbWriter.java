@@ -0,0 +1,114 @@
+package com.kisline.processors.bitcoin;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+// insert ... values (...), (...), ... 한 statement 에 여러 row 를 넣는다.
+// statement 하나의 parameter 수는 driver 제한(SQL Server 2100 개 등) 안으로 맞춘다.
+// row 수가 모자란 마지막 statement 는 그 크기로 따로 prepare 한다.
+class MultiRowDbWriter extends DbWriter {
+
+  static final int MAX_PARAMETERS = 2000;
+  private static final int PARAMETERS_PER_ROW = 8;
+
+  private final int rowsPerStatement;
+  // 아직 statement 에 bind 하지 않은 row (rowsPerStatement 개가 되면 bind 하고 addBatch)
+  private final HistoryBatch rows;
+  private int statements;
+
+  MultiRowDbWriter(
+      final PreparedStatement stmt,
+      final int rowsPerStatement,
+      final int batchSize,
+      final boolean commitPerBatch)
+      throws SQLException {
+    super(stmt, batchSize, commitPerBatch);
+    this.rowsPerStatement = rowsPerStatement;
+    this.rows = HistoryBatch.allocate(rowsPerStatement, false);
+  }
+
+  // batch size 와 parameter 제한으로 정한 statement 당 row 수
+  static int rowsPerStatement(final int batchSize) {
+    return Math.max(1, Math.min(batchSize, MAX_PARAMETERS / PARAMETERS_PER_ROW));
+  }
+
+  static String insertSql(final int rowCount) {
+    return insertSql(TABLE, rowCount);
+  }
+
+  static String insertSql(final String table, final int rowCount) {
+    final StringBuilder sql =
+        new StringBuilder("insert into " + table + " (" + COLUMNS + ") values ");
+    for (int i = 0; i < rowCount; i++) {
+      sql.append(i == 0 ? "" : ", ").append("(?, ?, ?, ?, ?, ?, ?, ?)");
+    }
+    return sql.toString();
+  }
+
+  @Override
+  PreparedStatement prepare(final String table) throws SQLException {
+    return connection.prepareStatement(insertSql(table, rowsPerStatement));
+  }
+
+  @Override
+  void addRow(final HistoryBatch batch, final int i) throws SQLException {
+    rows.add(
+        batch.getTimestamp(i),
+        batch.getOpen(i),
+        batch.getHigh(i),
+        batch.getLow(i),
+        batch.getClose(i),
+        batch.getBtcVolume(i),
+        batch.getUsdVolume(i),
+        batch.getWeightedPrice(i));
+
+    if (rows.isFull()) {
+      bind(stmt, rows);
+      stmt.addBatch();
+      statements++;
+      rows.clear();
+    }
+  }
+
+  @Override
+  int send() throws SQLException {
+    int count = 0;
+    if (statements > 0) {
+      count += countInserted(stmt.executeBatch(), rowsPerStatement);
+      statements = 0;
+    }
+
+    if (!rows.isEmpty()) {
+      try (final PreparedStatement tail =
+          connection.prepareStatement(insertSql(table, rows.size()))) {
+        bind(tail, rows);
+        count += tail.executeUpdate();
+      }
+      rows.clear();
+    }
+    return count;
+  }
+
+  @Override
+  void discard() throws SQLException {
+    stmt.clearBatch();
+    statements = 0;
+    rows.clear();
+  }
+
+  private static void bind(final PreparedStatement target, final HistoryBatch rows)
+      throws SQLException {
+    int p = 1;
+    for (int i = 0; i < rows.size(); i++) {
+      target.setTimestamp(p++, new Timestamp(rows.getTimestamp(i) * 1000L));
+      target.setDouble(p++, rows.getOpen(i));
+      target.setDouble(p++, rows.getHigh(i));
+      target.setDouble(p++, rows.getLow(i));
+      target.setDouble(p++, rows.getClose(i));
+      target.setDouble(p++, rows.getBtcVolume(i));
+      target.setDouble(p++, rows.getUsdVolume(i));
+      target.setDouble(p++, rows.getWeightedPrice(i));
+    }
+  }
+}
@@ -0,0 +1,128 @@
+package com.kisline.processors.bitcoin;
+
+import org.apache.nifi.processor.ProcessContext;
+
+import java.time.ZoneId;
+import java.util.concurrent.TimeUnit;
+
+// output FlowFile 을 어떤 단위로 나눌지에 대한 설정. onScheduled 에서 한 번 만들고 모든 thread 가 읽기만 한다.
+final class OutputSettings {
+
+  enum Granularity {
+    RECORD, // record 하나당 FlowFile 하나
+    BATCH, // N 개 record 마다 FlowFile 하나
+    FLOWFILE, // input FlowFile 하나당 FlowFile 하나
+    TIME // timestamp 구간(bucket) 마다 FlowFile 하나
+  }
+
+  enum JsonFormat {
+    ARRAY,
+    NDJSON
+  }
+
+  // JSON / XML FlowFile 의 content 압축
+  enum Compression {
+    NONE,
+    GZIP,
+    ZSTD
+  }
+
+  private final Granularity granularity;
+  private final int recordsPerFlowFile;
+  private final long bucketSeconds;
+  private final JsonFormat jsonFormat;
+  private final ZoneId zone;
+  private final Compression compression;
+  private final int compressionLevel;
+  // rolling indicator 의 bar 수 (0 이면 indicator 를 붙이지 않음)
+  private final int indicatorWindow;
+  // Partition By (null 이면 나누지 않음)
+  private final TimePartitioner.Unit partitionUnit;
+
+  OutputSettings(
+      final Granularity granularity,
+      final int recordsPerFlowFile,
+      final long bucketSeconds,
+      final JsonFormat jsonFormat,
+      final ZoneId zone,
+      final Compression compression,
+      final int compressionLevel,
+      final int indicatorWindow,
+      final TimePartitioner.Unit partitionUnit) {
+    this.granularity = granularity;
+    this.recordsPerFlowFile = recordsPerFlowFile;
+    this.bucketSeconds = bucketSeconds;
+    this.jsonFormat = jsonFormat;
+    this.zone = zone;
+    this.compression = compression;
+    this.compressionLevel = compressionLevel;
+    this.indicatorWindow = indicatorWindow;
+    this.partitionUnit = partitionUnit;
+  }
+
+  static OutputSettings from(final ProcessContext context) {
+    final String partitionBy = context.getProperty(ConfigUtil.PARTITION_BY).getValue();
+    return new OutputSettings(
+        Granularity.valueOf(context.getProperty(ConfigUtil.OUTPUT_GRANULARITY).getValue()),
+        context.getProperty(ConfigUtil.RECORDS_PER_FLOWFILE).asInteger(),
+        context.getProperty(ConfigUtil.TIME_BUCKET).asTimePeriod(TimeUnit.SECONDS),
+        JsonFormat.valueOf(context.getProperty(ConfigUtil.JSON_FORMAT).getValue()),
+        context.getProperty(ConfigUtil.OUTPUT_TIME_ZONE).isSet()
+            ? ZoneId.of(context.getProperty(ConfigUtil.OUTPUT_TIME_ZONE).getValue())
+            : ZoneId.systemDefault(),
+        Compression.valueOf(context.getProperty(ConfigUtil.OUTPUT_COMPRESSION).getValue()),
+        context.getProperty(ConfigUtil.OUTPUT_COMPRESSION_LEVEL).asInteger(),
+        context.getProperty(ConfigUtil.INDICATOR_WINDOW).isSet()
+            ? context.getProperty(ConfigUtil.INDICATOR_WINDOW).asInteger()
+            : 0,
+        "NONE".equals(partitionBy) ? null : TimePartitioner.Unit.valueOf(partitionBy));
+  }
+
+  Granularity getGranularity() {
+    return granularity;
+  }
+
+  int getRecordsPerFlowFile() {
+    return recordsPerFlowFile;
+  }
+
+  JsonFormat getJsonFormat() {
+    return jsonFormat;
+  }
+
+  // output 에 쓰는 timestamp 의 time zone
+  ZoneId getZone() {
+    return zone;
+  }
+
+  Compression getCompression() {
+    return compression;
+  }
+
+  int getCompressionLevel() {
+    return compressionLevel;
+  }
+
+  int getIndicatorWindow() {
+    return indicatorWindow;
+  }
+
+  // record 에 sma / ema / vwap / volatility 가 붙는지
+  boolean hasIndicators() {
+    return indicatorWindow > 0;
+  }
+
+  boolean isPartitioned() {
+    return partitionUnit != null;
+  }
+
+  // Output Time Zone 으로 나누는 partitioner. (상태가 있으므로 쓰는 곳마다 새로 만든다. 나누지 않으면 null)
+  TimePartitioner newPartitioner() {
+    return partitionUnit != null ? new TimePartitioner(partitionUnit, zone) : null;
+  }
+
+  // epoch seconds 가 속한 bucket 번호
+  long bucketOf(final long epochSecond) {
+    return Math.floorDiv(epochSecond, bucketSeconds);
+  }
+}
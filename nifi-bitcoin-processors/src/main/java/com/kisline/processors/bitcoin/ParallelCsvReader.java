@@ -0,0 +1,305 @@
+package com.kisline.processors.bitcoin;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+// 큰 CSV 를 line 경계에서 chunk 로 잘라 여러 thread 에서 parsing 하고, 결과는 원래 순서대로 handler 에 넘긴다.
+// (Bitstamp export 는 timestamp 순이므로 chunk 순서가 곧 timestamp 순서)
+// 동시에 떠 있는 chunk 수를 제한해서 memory 는 chunk 크기 * maxInFlight 로 묶인다.
+// invalid 가 있으면 형식이 틀린 row 를 chunk 별로 모아 두었다가 순서대로 넘기고 계속 읽는다.
+// chunk 의 batch 는 항상 heap 에 두고 handler 에 넘긴 뒤 free 로 돌려서 다시 쓴다.
+// chunk buffer 도 parsing 이 끝나면 freeChunks 로 돌려서 다음 chunk 를 읽는 데 다시 쓴다.
+// Off-Heap Batches 면 넘기기 전에 target (off-heap batch 하나) 으로 옮겨 담는다. -> allocateDirect 는 read 마다 0 번
+final class ParallelCsvReader {
+
+  static final int CHUNK_SIZE = 4 * 1024 * 1024;
+
+  private static final class MalformedRow {
+    private final long line;
+    private final String error;
+    private final String text;
+
+    private MalformedRow(final long line, final String error, final String text) {
+      this.line = line;
+      this.error = error;
+      this.text = text;
+    }
+  }
+
+  private static final class ChunkResult {
+    private final List<HistoryBatch> batches = new ArrayList<>();
+    // invalid 로 보낼 row (chunk 안의 line 번호)
+    private final List<MalformedRow> malformed = new ArrayList<>();
+    private long rows;
+    private long valid;
+    private long skipped;
+    private long lines;
+    private long malformedLine;
+    private String error;
+  }
+
+  private final ExecutorService executor;
+  private final int maxInFlight;
+  // null 이면 chunk batch 를 그대로 넘긴다.
+  private final HistoryBatch target;
+  // handler 에 넘긴 chunk batch (parse task 가 다시 쓴다)
+  private final ConcurrentLinkedQueue<HistoryBatch> free = new ConcurrentLinkedQueue<>();
+  // parsing 이 끝난 CHUNK_SIZE buffer (line 이 길어서 키운 buffer 는 보관하지 않는다)
+  private final BlockingQueue<byte[]> freeChunks;
+  private final long watermark;
+  // null 이면 형식이 틀린 row 에서 실패한다.
+  private final InvalidRowSink invalid;
+
+  private long rows;
+  private long valid;
+  private long skipped;
+
+  ParallelCsvReader(
+      final ExecutorService executor,
+      final int parallelism,
+      final HistoryBatch target,
+      final long watermark,
+      final InvalidRowSink invalid) {
+    this.executor = executor;
+    this.maxInFlight = parallelism * 2;
+    // 떠 있는 chunk 와 그 뒤에 읽고 있는 chunk 를 모두 담을 만큼
+    this.freeChunks = new ArrayBlockingQueue<>(maxInFlight + parallelism);
+    this.target = target;
+    this.watermark = watermark;
+    this.invalid = invalid;
+  }
+
+  // 읽은 data row 수 (read 가 예외로 끝나도 그때까지 센 값)
+  long getRows() {
+    return rows;
+  }
+
+  // 값이 모두 있는 row 수 (read 이후)
+  long getValidRows() {
+    return valid;
+  }
+
+  // watermark 때문에 건너뛴 row 수 (read 이후)
+  long getSkippedRows() {
+    return skipped;
+  }
+
+  // 읽은 data row 수를 돌려준다.
+  long read(final InputStream in, final BatchHandler handler) throws IOException, SQLException {
+    byte[] chunk = borrowChunk(0, CHUNK_SIZE);
+    int filled = fill(in, chunk, 0);
+
+    final int headerEnd = indexOf(chunk, 0, filled, (byte) '\n');
+    final int headerLength = headerEnd < 0 ? filled : headerEnd + 1;
+    final BitstampCsvParser header =
+        new BitstampCsvParser(new ByteArrayInputStream(chunk, 0, headerLength));
+    header.setWatermark(watermark);
+
+    // header 를 뺀 나머지를 chunk 앞으로
+    System.arraycopy(chunk, headerLength, chunk, 0, filled - headerLength);
+    filled -= headerLength;
+
+    final Deque<Future<ChunkResult>> pending = new ArrayDeque<>();
+    long lines = 1;
+    try {
+      boolean eof = false;
+      while (!eof || filled > 0) {
+        if (!eof) {
+          final int read = fill(in, chunk, filled);
+          eof = read < chunk.length;
+          filled = read;
+        }
+
+        int cut = eof ? filled : lastIndexOf(chunk, filled, (byte) '\n') + 1;
+        if (cut == 0) {
+          if (filled == chunk.length) {
+            // chunk 보다 긴 line
+            final byte[] bigger = new byte[chunk.length * 2];
+            System.arraycopy(chunk, 0, bigger, 0, filled);
+            chunk = bigger;
+          }
+          continue;
+        }
+
+        final byte[] next = borrowChunk(filled - cut, chunk.length);
+        System.arraycopy(chunk, cut, next, 0, filled - cut);
+        pending.add(executor.submit(parseTask(header, chunk, cut)));
+        chunk = next;
+        filled -= cut;
+
+        while (pending.size() >= maxInFlight) {
+          final ChunkResult result = await(pending.poll());
+          merge(result, lines, handler);
+          lines += result.lines;
+        }
+      }
+
+      while (!pending.isEmpty()) {
+        final ChunkResult result = await(pending.poll());
+        merge(result, lines, handler);
+        lines += result.lines;
+      }
+    } finally {
+      for (final Future<ChunkResult> future : pending) {
+        future.cancel(true);
+      }
+    }
+
+    return rows;
+  }
+
+  private Callable<ChunkResult> parseTask(
+      final BitstampCsvParser header, final byte[] chunk, final int length) {
+    return new Callable<ChunkResult>() {
+
+      @Override
+      public ChunkResult call() throws Exception {
+        try {
+          return parse(new BitstampCsvParser(header, chunk, length));
+        } finally {
+          // row 값은 batch 로, 틀린 row 는 String 으로 옮겼으므로 chunk 는 더 쓰지 않는다.
+          if (chunk.length == CHUNK_SIZE) {
+            freeChunks.offer(chunk);
+          }
+        }
+      }
+    };
+  }
+
+  private ChunkResult parse(final BitstampCsvParser parser) throws IOException {
+    final ChunkResult result = new ChunkResult();
+
+    HistoryBatch batch = borrowBatch();
+    BitstampCsvParser.Row row;
+    while ((row = parser.next()) != BitstampCsvParser.Row.END) {
+      result.rows++;
+      if (row == BitstampCsvParser.Row.MALFORMED) {
+        if (invalid != null) {
+          result.malformed.add(
+              new MalformedRow(parser.getLineNumber(), parser.getError(), parser.getLine()));
+          continue;
+        }
+        result.malformedLine = parser.getLineNumber();
+        result.error = parser.getError();
+        break;
+      }
+
+      if (row == BitstampCsvParser.Row.SKIPPED) {
+        result.skipped++;
+      } else if (row == BitstampCsvParser.Row.VALID) {
+        result.valid++;
+        batch.add(parser);
+        if (batch.isFull()) {
+          result.batches.add(batch);
+          batch = borrowBatch();
+        }
+      }
+    }
+
+    if (!batch.isEmpty()) {
+      result.batches.add(batch);
+    } else {
+      free.offer(batch);
+    }
+    result.lines = parser.getLineNumber();
+    return result;
+  }
+
+  // chunk 결과를 handler 로 넘긴다. linesBefore 는 chunk 첫 line 앞까지의 line 수 (header 포함)
+  private void merge(final ChunkResult result, final long linesBefore, final BatchHandler handler)
+      throws IOException, SQLException {
+    for (final HistoryBatch batch : result.batches) {
+      if (target != null) {
+        target.clear();
+        target.addAll(batch);
+        handler.handle(target);
+      } else {
+        handler.handle(batch);
+      }
+      batch.clear();
+      free.offer(batch);
+    }
+    for (final MalformedRow row : result.malformed) {
+      invalid.malformed(linesBefore + row.line, row.error, row.text);
+    }
+    rows += result.rows;
+    valid += result.valid;
+    skipped += result.skipped;
+
+    if (result.error != null) {
+      throw new IOException(
+          "Malformed row at line " + (linesBefore + result.malformedLine) + ": " + result.error);
+    }
+  }
+
+  // length 만큼 옮겨 담을 수 있으면 보관한 buffer 를, 아니면 size 크기로 새로 만든다.
+  private byte[] borrowChunk(final int length, final int size) {
+    if (length <= CHUNK_SIZE) {
+      final byte[] chunk = freeChunks.poll();
+      if (chunk != null) {
+        return chunk;
+      }
+    }
+    return new byte[size];
+  }
+
+  private HistoryBatch borrowBatch() {
+    final HistoryBatch batch = free.poll();
+    return batch != null ? batch : HistoryBatch.allocate(HistoryBatch.DEFAULT_CAPACITY, false);
+  }
+
+  private static ChunkResult await(final Future<ChunkResult> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while parsing CSV chunk", e);
+    } catch (ExecutionException e) {
+      throw new IOException("Could not parse CSV chunk", e.getCause());
+    }
+  }
+
+  // buffer 가 차거나 stream 이 끝날 때까지 읽는다. 채워진 길이를 돌려준다.
+  private static int fill(final InputStream in, final byte[] buffer, int filled)
+      throws IOException {
+    while (filled < buffer.length) {
+      final int read = in.read(buffer, filled, buffer.length - filled);
+      if (read < 0) {
+        break;
+      }
+      filled += read;
+    }
+    return filled;
+  }
+
+  private static int indexOf(final byte[] buffer, final int from, final int to, final byte b) {
+    for (int i = from; i < to; i++) {
+      if (buffer[i] == b) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static int lastIndexOf(final byte[] buffer, final int to, final byte b) {
+    for (int i = to - 1; i >= 0; i--) {
+      if (buffer[i] == b) {
+        return i;
+      }
+    }
+    return -1;
+  }
+}
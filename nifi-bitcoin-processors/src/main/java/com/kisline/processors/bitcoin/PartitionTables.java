@@ -0,0 +1,100 @@
+package com.kisline.processors.bitcoin;
+
+import com.kisline.dbcp.HikariCPService;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Locale;
+import java.util.Set;
+
+// DB Partition Tables 일 때 row 가 들어갈 table (bitcoin_history_<기간>) 을 정하고, 없는 table 은 만든다.
+// table 은 FlowFile 의 DB 작업과 별개인 auto commit connection 에서 만든다.
+// -> FlowFile 이 rollback 되어도 table 은 남으므로 knownTables 를 믿을 수 있다. (PostgreSQL 은 DDL 도 rollback 됨)
+// knownTables 는 있는 것을 확인한 table 이름으로 task 간에 공유한다.
+// 이 객체는 thread safe 하지 않다. (DB writer 마다 하나씩)
+final class PartitionTables {
+
+  static final String PREFIX = DbWriter.TABLE + "_";
+
+  private final TimePartitioner partitioner;
+  private final HikariCPService dbcpService;
+  private final Set<String> knownTables;
+
+  private long partition;
+  private String table;
+
+  PartitionTables(
+      final TimePartitioner partitioner,
+      final HikariCPService dbcpService,
+      final Set<String> knownTables) {
+    this.partitioner = partitioner;
+    this.dbcpService = dbcpService;
+    this.knownTables = knownTables;
+  }
+
+  static String createSql(final String table) {
+    return "create table "
+        + table
+        + " (history_time timestamp, open_price double precision, high double precision, "
+        + "low double precision, closed_price double precision, btc_volume double precision, "
+        + "usd_volume double precision, weighted_price double precision)";
+  }
+
+  // timestamp 가 속한 기간의 table. 같은 기간이면 같은 String 을 돌려준다.
+  String tableOf(final long timestamp) throws SQLException {
+    final long start = partitioner.startOf(timestamp);
+    if (table != null && start == partition) {
+      return table;
+    }
+
+    final String name = PREFIX + partitioner.tableSuffix(start);
+    if (!knownTables.contains(name)) {
+      create(name);
+      knownTables.add(name);
+    }
+    partition = start;
+    table = name;
+    return table;
+  }
+
+  private void create(final String name) throws SQLException {
+    try (final Connection connection = dbcpService.getConnection()) {
+      connection.setAutoCommit(true);
+      if (exists(connection, name)) {
+        return;
+      }
+
+      try (final Statement stmt = connection.createStatement()) {
+        stmt.execute(createSql(name));
+      } catch (SQLException e) {
+        // 다른 task (다른 node) 가 먼저 만들었을 수 있다.
+        if (!exists(connection, name)) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  private static boolean exists(final Connection connection, final String name)
+      throws SQLException {
+    final DatabaseMetaData metaData = connection.getMetaData();
+    String pattern = name;
+    if (metaData.storesUpperCaseIdentifiers()) {
+      pattern = pattern.toUpperCase(Locale.ROOT);
+    } else if (metaData.storesLowerCaseIdentifiers()) {
+      pattern = pattern.toLowerCase(Locale.ROOT);
+    }
+    // '_' 는 LIKE pattern 의 wildcard
+    final String escape = metaData.getSearchStringEscape();
+    if (escape != null && !escape.isEmpty()) {
+      pattern = pattern.replace("_", escape + "_");
+    }
+
+    try (final ResultSet rs = metaData.getTables(null, null, pattern, new String[] {"TABLE"})) {
+      return rs.next();
+    }
+  }
+}
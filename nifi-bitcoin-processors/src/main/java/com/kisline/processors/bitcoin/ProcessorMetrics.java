@@ -0,0 +1,87 @@
+package com.kisline.processors.bitcoin;
+
+import com.codahale.metrics.JmxReporter;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+import com.codahale.metrics.Timer;
+
+import java.util.concurrent.TimeUnit;
+
+// processor 별 Dropwizard metrics. 모든 processor 가 같은 registry 를 쓰고 JMX 로 내보낸다.
+// 이름: com.kisline.processors.bitcoin.BitcoinHistoryProcessor.<processor id>.<metric>
+// onScheduled 에서 만들고 onStopped 에서 close 한다. -> 지워진 processor 의 metric / MBean 이 남지 않음
+// JMX reporter 는 열려 있는 ProcessorMetrics 가 있는 동안만 돈다.
+final class ProcessorMetrics {
+
+  static final String REGISTRY_NAME = "nifi-bitcoin";
+
+  private static final String[] NAMES = {
+    "parse", "serialize", "db", "db-batch", "rows", "valid-rows"
+  };
+
+  // reporter 와 users 는 class lock 으로 보호한다.
+  private static JmxReporter reporter;
+  private static int users;
+
+  private final MetricRegistry registry;
+  private final String processorId;
+  private final Timer parse;
+  private final Timer serialize;
+  private final Timer db;
+  private final Timer dbBatch;
+  private final Meter rows;
+  private final Meter validRows;
+
+  ProcessorMetrics(final String processorId) {
+    this.registry = SharedMetricRegistries.getOrCreate(REGISTRY_NAME);
+    this.processorId = processorId;
+    acquireReporter(registry);
+
+    this.parse = registry.timer(name(processorId, "parse"));
+    this.serialize = registry.timer(name(processorId, "serialize"));
+    this.db = registry.timer(name(processorId, "db"));
+    this.dbBatch = registry.timer(name(processorId, "db-batch"));
+    this.rows = registry.meter(name(processorId, "rows"));
+    this.validRows = registry.meter(name(processorId, "valid-rows"));
+  }
+
+  // DB batch 하나 (executeBatch / COPY) 의 latency
+  Timer getDbBatchTimer() {
+    return dbBatch;
+  }
+
+  void update(final TriggerMetrics metrics) {
+    parse.update(metrics.parseNanos(), TimeUnit.NANOSECONDS);
+    serialize.update(metrics.serializeNanos, TimeUnit.NANOSECONDS);
+    db.update(metrics.dbNanos, TimeUnit.NANOSECONDS);
+    rows.mark(metrics.rowsRead);
+    validRows.mark(metrics.rowsValid);
+  }
+
+  // 이 processor 의 metric 을 registry 에서 지운다. (JmxReporter 가 MBean 도 내린다)
+  void close() {
+    for (final String metric : NAMES) {
+      registry.remove(name(processorId, metric));
+    }
+    releaseReporter();
+  }
+
+  private static synchronized void acquireReporter(final MetricRegistry registry) {
+    if (users++ == 0) {
+      reporter = JmxReporter.forRegistry(registry).inDomain(REGISTRY_NAME).build();
+      reporter.start();
+    }
+  }
+
+  private static synchronized void releaseReporter() {
+    if (--users == 0) {
+      reporter.stop();
+      reporter = null;
+    }
+  }
+
+  private static String name(final String processorId, final String metric) {
+    return MetricRegistry.name(BitcoinHistoryProcessor.class, processorId, metric);
+  }
+}
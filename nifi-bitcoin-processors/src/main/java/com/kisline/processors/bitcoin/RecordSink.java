@@ -0,0 +1,112 @@
+package com.kisline.processors.bitcoin;
+
+import org.apache.nifi.serialization.MalformedRecordException;
+import org.apache.nifi.serialization.RecordSetWriter;
+import org.apache.nifi.serialization.SimpleRecordSchema;
+import org.apache.nifi.serialization.record.MapRecord;
+import org.apache.nifi.serialization.record.Record;
+import org.apache.nifi.serialization.record.RecordField;
+import org.apache.nifi.serialization.record.RecordFieldType;
+import org.apache.nifi.serialization.record.RecordSchema;
+import org.apache.nifi.serialization.record.util.IllegalTypeConversionException;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+// Record API 와 HistoryBatch 사이의 변환.
+// input record 는 Bitstamp CSV 의 column 이름, output record 는 BitcoinHistory 의 field 이름을 쓴다.
+final class RecordSink implements BatchHandler {
+
+  static final RecordSchema SCHEMA =
+      new SimpleRecordSchema(
+          Arrays.asList(
+              new RecordField("timestamp", RecordFieldType.TIMESTAMP.getDataType()),
+              new RecordField("open", RecordFieldType.DOUBLE.getDataType()),
+              new RecordField("close", RecordFieldType.DOUBLE.getDataType()),
+              new RecordField("high", RecordFieldType.DOUBLE.getDataType()),
+              new RecordField("low", RecordFieldType.DOUBLE.getDataType()),
+              new RecordField("btcVolume", RecordFieldType.DOUBLE.getDataType()),
+              new RecordField("weightedPrice", RecordFieldType.DOUBLE.getDataType()),
+              new RecordField("usdVolume", RecordFieldType.DOUBLE.getDataType())));
+
+  private final RecordSetWriter writer;
+  private final RecordSchema schema;
+  // writer.write 는 record 를 바로 써 버리므로 record 마다 map 과 배열을 새로 만들지 않고 재사용한다.
+  private final Map<String, Object> values = new HashMap<>();
+  private final double[] columns = new double[BitstampCsvParser.COLUMNS.length];
+
+  RecordSink(final RecordSetWriter writer, final RecordSchema schema) {
+    this.writer = writer;
+    this.schema = schema;
+  }
+
+  @Override
+  public void handle(final HistoryBatch batch) throws IOException {
+    for (int i = 0; i < batch.size(); i++) {
+      values.put("timestamp", new Timestamp(batch.getTimestamp(i) * 1000));
+      values.put("open", batch.getOpen(i));
+      values.put("close", batch.getClose(i));
+      values.put("high", batch.getHigh(i));
+      values.put("low", batch.getLow(i));
+      values.put("btcVolume", batch.getBtcVolume(i));
+      values.put("weightedPrice", batch.getWeightedPrice(i));
+      values.put("usdVolume", batch.getUsdVolume(i));
+      writer.write(new MapRecord(schema, values));
+    }
+  }
+
+  // input record 하나를 batch 에 추가한다. NaN 이 있는 row (빈 구간) 는 추가하지 않고 false
+  boolean add(final Record record, final HistoryBatch batch) throws MalformedRecordException {
+    final String timestampField = BitstampCsvParser.COLUMNS[BitstampCsvParser.TIMESTAMP];
+    final long timestamp;
+    try {
+      final Object value = record.getValue(timestampField);
+      if (value == null) {
+        throw missing(BitstampCsvParser.TIMESTAMP);
+      }
+      // reader 가 timestamp type 으로 읽은 경우 (epoch millis)
+      timestamp =
+          value instanceof Date
+              ? ((Date) value).getTime() / 1000
+              : record.getAsLong(timestampField);
+
+      for (int slot = 0; slot < columns.length; slot++) {
+        if (slot == BitstampCsvParser.TIMESTAMP) {
+          continue;
+        }
+        final Double v = record.getAsDouble(BitstampCsvParser.COLUMNS[slot]);
+        if (v == null) {
+          throw missing(slot);
+        }
+        columns[slot] = v;
+      }
+    } catch (IllegalTypeConversionException | NumberFormatException e) {
+      throw new MalformedRecordException("Invalid value in record " + record, e);
+    }
+
+    for (final double v : columns) {
+      if (Double.isNaN(v)) {
+        return false;
+      }
+    }
+
+    batch.add(
+        timestamp,
+        columns[BitstampCsvParser.OPEN],
+        columns[BitstampCsvParser.HIGH],
+        columns[BitstampCsvParser.LOW],
+        columns[BitstampCsvParser.CLOSE],
+        columns[BitstampCsvParser.BTC_VOLUME],
+        columns[BitstampCsvParser.USD_VOLUME],
+        columns[BitstampCsvParser.WEIGHTED_PRICE]);
+    return true;
+  }
+
+  private static MalformedRecordException missing(final int slot) {
+    return new MalformedRecordException("Record is missing " + BitstampCsvParser.COLUMNS[slot]);
+  }
+}
@@ -0,0 +1,95 @@
+package com.kisline.processors.bitcoin;
+
+import java.io.IOException;
+import java.sql.SQLException;
+
+// 1분 bar 를 더 긴 구간(5분, 1시간, 1일 ...)의 candle 로 합쳐 다음 단계로 넘긴다. (한 번 훑으면서 처리)
+// 구간은 epoch(UTC) 기준으로 자른다. input 은 timestamp 순이라고 가정한다.
+// open 은 첫 bar, close 는 마지막 bar, high/low 는 최대/최소, volume 은 합,
+// weightedPrice 는 구간 전체의 VWAP (usd volume 합 / btc volume 합)
+// Incremental Load 에서는 flushComplete 로 마지막 candle 을 남겨 두고 watermark 를 그 앞까지만 올린다.
+// -> 다음 load 가 그 구간의 bar 를 다시 읽어 완성된 candle 을 한 번만 내보냄
+final class Resampler implements BatchHandler {
+
+  private final long intervalSeconds;
+  private final BatchHandler downstream;
+  private final HistoryBatch candles;
+
+  private boolean open;
+  private long bucket;
+  private double openPrice;
+  private double high;
+  private double low;
+  private double close;
+  private double btcVolume;
+  private double usdVolume;
+  private double lastWeightedPrice;
+
+  Resampler(final long intervalSeconds, final boolean offHeap, final BatchHandler downstream) {
+    this.intervalSeconds = intervalSeconds;
+    this.downstream = downstream;
+    this.candles = HistoryBatch.allocate(HistoryBatch.DEFAULT_CAPACITY, offHeap);
+  }
+
+  @Override
+  public void handle(final HistoryBatch batch) throws IOException, SQLException {
+    for (int i = 0; i < batch.size(); i++) {
+      final long rowBucket = Math.floorDiv(batch.getTimestamp(i), intervalSeconds);
+      if (!open || rowBucket != bucket) {
+        emit();
+        open = true;
+        bucket = rowBucket;
+        openPrice = batch.getOpen(i);
+        high = batch.getHigh(i);
+        low = batch.getLow(i);
+        btcVolume = 0;
+        usdVolume = 0;
+      } else {
+        high = Math.max(high, batch.getHigh(i));
+        low = Math.min(low, batch.getLow(i));
+      }
+
+      close = batch.getClose(i);
+      btcVolume += batch.getBtcVolume(i);
+      usdVolume += batch.getUsdVolume(i);
+      lastWeightedPrice = batch.getWeightedPrice(i);
+    }
+  }
+
+  // 마지막 (미완성) candle 까지 내보낸다. input 이 끝났을 때 한 번 호출한다.
+  void flush() throws IOException, SQLException {
+    emit();
+    open = false;
+    drain();
+  }
+
+  // 끝난 candle 만 내보내고 마지막 candle 은 버린다. 버린 candle 의 시작 시각 (없으면 Long.MAX_VALUE)
+  long flushComplete() throws IOException, SQLException {
+    final long openStart = open ? bucket * intervalSeconds : Long.MAX_VALUE;
+    open = false;
+    drain();
+    return openStart;
+  }
+
+  private void drain() throws IOException, SQLException {
+    if (!candles.isEmpty()) {
+      downstream.handle(candles);
+      candles.clear();
+    }
+  }
+
+  private void emit() throws IOException, SQLException {
+    if (!open) {
+      return;
+    }
+
+    // 거래량이 0 인 구간은 VWAP 을 정의할 수 없으므로 마지막 bar 의 weightedPrice 를 쓴다.
+    final double vwap = btcVolume > 0 ? usdVolume / btcVolume : lastWeightedPrice;
+    candles.add(
+        bucket * intervalSeconds, openPrice, high, low, close, btcVolume, usdVolume, vwap);
+    if (candles.isFull()) {
+      downstream.handle(candles);
+      candles.clear();
+    }
+  }
+}
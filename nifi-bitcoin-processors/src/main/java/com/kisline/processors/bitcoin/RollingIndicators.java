@@ -0,0 +1,139 @@
+package com.kisline.processors.bitcoin;
+
+import java.io.IOException;
+import java.sql.SQLException;
+
+// bar 마다 최근 window 개 bar 의 indicator 를 붙여 다음 단계로 넘긴다. (한 번 훑으면서 row 당 O(1))
+// input 은 timestamp 순이라고 가정한다. (resampling 을 하면 candle 이 bar)
+// - sma : close 의 단순 이동 평균
+// - ema : close 의 지수 이동 평균 (alpha = 2 / (window + 1), 첫 bar 의 close 에서 시작)
+// - vwap : window 안의 usd volume 합 / btc volume 합
+// - volatility : 최근 window 개 log return (ln(close / 이전 close)) 의 표본 표준편차 (bar 로는 window + 1 개)
+// window 가 다 차기 전에는 지금까지의 bar 로만 계산한다.
+final class RollingIndicators implements BatchHandler {
+
+  private final BatchHandler downstream;
+  private final HistoryBatch enriched;
+  private final double alpha;
+
+  private final Window closes;
+  private final Window btcVolumes;
+  private final Window usdVolumes;
+  private final Window returns;
+
+  private boolean started;
+  private double ema;
+  private double previousClose;
+
+  RollingIndicators(final int window, final boolean offHeap, final BatchHandler downstream) {
+    this.downstream = downstream;
+    this.enriched = HistoryBatch.allocate(HistoryBatch.DEFAULT_CAPACITY, offHeap, true);
+    this.alpha = 2.0 / (window + 1);
+    this.closes = new Window(window);
+    this.btcVolumes = new Window(window);
+    this.usdVolumes = new Window(window);
+    this.returns = new Window(window);
+  }
+
+  @Override
+  public void handle(final HistoryBatch batch) throws IOException, SQLException {
+    for (int i = 0; i < batch.size(); i++) {
+      final double close = batch.getClose(i);
+      if (!started) {
+        started = true;
+        ema = close;
+      } else {
+        ema += alpha * (close - ema);
+        returns.add(close > 0 && previousClose > 0 ? Math.log(close / previousClose) : 0);
+      }
+      previousClose = close;
+      closes.add(close);
+      btcVolumes.add(batch.getBtcVolume(i));
+      usdVolumes.add(batch.getUsdVolume(i));
+
+      // 거래량이 0 이면 VWAP 을 정의할 수 없으므로 bar 의 weightedPrice 를 쓴다. (Resampler 와 같음)
+      final double vwap =
+          btcVolumes.sum() > 0 ? usdVolumes.sum() / btcVolumes.sum() : batch.getWeightedPrice(i);
+
+      final int row = enriched.size();
+      enriched.add(
+          batch.getTimestamp(i),
+          batch.getOpen(i),
+          batch.getHigh(i),
+          batch.getLow(i),
+          close,
+          batch.getBtcVolume(i),
+          batch.getUsdVolume(i),
+          batch.getWeightedPrice(i));
+      enriched.setIndicators(row, closes.mean(), ema, vwap, returns.standardDeviation());
+      if (enriched.isFull()) {
+        downstream.handle(enriched);
+        enriched.clear();
+      }
+    }
+
+    // 들고 있지 않고 바로 넘긴다. -> flush 가 필요 없다.
+    if (!enriched.isEmpty()) {
+      downstream.handle(enriched);
+      enriched.clear();
+    }
+  }
+
+  // 최근 N 개 값의 ring buffer 와 그 합 / 제곱합
+  private static final class Window {
+
+    private final double[] values;
+    private int position;
+    private int count;
+    private double sum;
+    private double sumOfSquares;
+
+    Window(final int size) {
+      this.values = new double[size];
+    }
+
+    void add(final double value) {
+      if (count == values.length) {
+        final double oldest = values[position];
+        sum -= oldest;
+        sumOfSquares -= oldest * oldest;
+      } else {
+        count++;
+      }
+      values[position] = value;
+      sum += value;
+      sumOfSquares += value * value;
+
+      if (++position == values.length) {
+        position = 0;
+        // 더하고 빼면서 쌓인 오차를 한 바퀴마다 새로 더해서 없앤다. (row 당 평균 O(1))
+        recompute();
+      }
+    }
+
+    double sum() {
+      return sum;
+    }
+
+    double mean() {
+      return count > 0 ? sum / count : 0;
+    }
+
+    double standardDeviation() {
+      if (count < 2) {
+        return 0;
+      }
+      final double variance = (sumOfSquares - sum * sum / count) / (count - 1);
+      return variance > 0 ? Math.sqrt(variance) : 0;
+    }
+
+    private void recompute() {
+      sum = 0;
+      sumOfSquares = 0;
+      for (int i = 0; i < count; i++) {
+        sum += values[i];
+        sumOfSquares += values[i] * values[i];
+      }
+    }
+  }
+}
@@ -0,0 +1,115 @@
+package com.kisline.processors.bitcoin;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.time.zone.ZoneOffsetTransition;
+import java.util.HashMap;
+import java.util.Map;
+
+// timestamp 를 time zone 의 시간 / 날짜 구간(partition)으로 나눈다.
+// partition 은 시작 시각 (epoch seconds) 으로 구분한다.
+// 마지막 partition 의 [start, end) 를 기억해서 같은 구간의 row 는 비교 두 번으로 끝난다. (input 은 timestamp 순)
+// end 는 다음 offset 변경 (DST) 보다 늦지 않게 잡아서 그 사이의 row 가 잘못된 구간에 들어가지 않게 한다.
+// thread safe 하지 않다. (sink / DB writer 마다 하나씩)
+final class TimePartitioner {
+
+  enum Unit {
+    HOUR,
+    DAY
+  }
+
+  private static final DateTimeFormatter DAY_KEY = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+  private static final DateTimeFormatter HOUR_KEY = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH");
+  private static final DateTimeFormatter DAY_SUFFIX = DateTimeFormatter.ofPattern("yyyyMMdd");
+  private static final DateTimeFormatter HOUR_SUFFIX = DateTimeFormatter.ofPattern("yyyyMMddHH");
+
+  private final Unit unit;
+  private final ZoneId zone;
+
+  private long start = Long.MAX_VALUE;
+  private long end = Long.MIN_VALUE;
+
+  TimePartitioner(final Unit unit, final ZoneId zone) {
+    this.unit = unit;
+    this.zone = zone;
+  }
+
+  Unit getUnit() {
+    return unit;
+  }
+
+  // epoch seconds 가 속한 partition 의 시작 시각
+  long startOf(final long epochSecond) {
+    if (epochSecond >= start && epochSecond < end) {
+      return start;
+    }
+
+    final Instant instant = Instant.ofEpochSecond(epochSecond);
+    final ZonedDateTime time = instant.atZone(zone);
+    final ZonedDateTime from;
+    final ZonedDateTime to;
+    if (unit == Unit.DAY) {
+      final LocalDate date = time.toLocalDate();
+      from = date.atStartOfDay(zone);
+      to = date.plusDays(1).atStartOfDay(zone);
+    } else {
+      from = time.truncatedTo(ChronoUnit.HOURS);
+      to = from.plusHours(1);
+    }
+    start = from.toEpochSecond();
+    end = to.toEpochSecond();
+
+    final ZoneOffsetTransition transition = zone.getRules().nextTransition(instant);
+    if (transition != null && transition.toEpochSecond() < end) {
+      end = transition.toEpochSecond();
+    }
+    return start;
+  }
+
+  // partition 을 나타내는 문자열 (2011-12-31, 2011-12-31T07)
+  String key(final long partition) {
+    return atZone(partition).format(unit == Unit.DAY ? DAY_KEY : HOUR_KEY);
+  }
+
+  // DB partition table 이름 뒤에 붙는 값 (20111231, 2011123107)
+  String tableSuffix(final long partition) {
+    return atZone(partition).format(unit == Unit.DAY ? DAY_SUFFIX : HOUR_SUFFIX);
+  }
+
+  // output FlowFile 에 붙이는 partition.* attribute
+  Map<String, String> attributes(final long partition) {
+    final ZonedDateTime from = atZone(partition);
+    final ZonedDateTime to =
+        unit == Unit.DAY
+            ? from.toLocalDate().plusDays(1).atStartOfDay(zone)
+            : from.plusHours(1);
+
+    final String year = String.format("%04d", from.getYear());
+    final String month = String.format("%02d", from.getMonthValue());
+    final String day = String.format("%02d", from.getDayOfMonth());
+    String path = "year=" + year + "/month=" + month + "/day=" + day;
+
+    final Map<String, String> attrs = new HashMap<>();
+    attrs.put(ConfigUtil.PARTITION_KEY, key(partition));
+    attrs.put(ConfigUtil.PARTITION_START, from.toOffsetDateTime().toString());
+    attrs.put(ConfigUtil.PARTITION_END, to.toOffsetDateTime().toString());
+    attrs.put(ConfigUtil.PARTITION_YEAR, year);
+    attrs.put(ConfigUtil.PARTITION_MONTH, month);
+    attrs.put(ConfigUtil.PARTITION_DAY, day);
+    if (unit == Unit.HOUR) {
+      final String hour = String.format("%02d", from.getHour());
+      attrs.put(ConfigUtil.PARTITION_HOUR, hour);
+      path += "/hour=" + hour;
+    }
+    attrs.put(ConfigUtil.PARTITION_PATH, path);
+    return attrs;
+  }
+
+  private ZonedDateTime atZone(final long partition) {
+    return Instant.ofEpochSecond(partition).atZone(zone);
+  }
+}
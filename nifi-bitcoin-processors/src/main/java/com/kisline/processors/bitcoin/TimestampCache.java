@@ -0,0 +1,35 @@
+package com.kisline.processors.bitcoin;
+
+// 최근에 DB 에 들어간 history_time 을 기억해서 중복 row 를 DB 에 묻기 전에 거른다.
+// 크기를 넘으면 오래된 절반(이전 세대)을 통째로 버린다. -> memory 는 maxEntries 개 정도로 묶인다.
+// 여기 없다고 DB 에 없는 것은 아니다. (miss 면 DB 에서 확인)
+final class TimestampCache {
+
+  private final int generationSize;
+  private LongHashSet current;
+  private LongHashSet previous;
+
+  TimestampCache(final int maxEntries) {
+    this.generationSize = Math.max(1, maxEntries / 2);
+    this.current = new LongHashSet(generationSize);
+    this.previous = new LongHashSet(0);
+  }
+
+  // 한 번에 이보다 많이 넣으면 세대가 바로 바뀌므로 더 모아도 소용없다.
+  int getGenerationSize() {
+    return generationSize;
+  }
+
+  synchronized boolean contains(final long timestamp) {
+    return current.contains(timestamp) || previous.contains(timestamp);
+  }
+
+  // commit 된 timestamp 만 넣어야 한다.
+  synchronized void addAll(final LongHashSet timestamps) {
+    current.addAll(timestamps);
+    if (current.size() >= generationSize) {
+      previous = current;
+      current = new LongHashSet(generationSize);
+    }
+  }
+}
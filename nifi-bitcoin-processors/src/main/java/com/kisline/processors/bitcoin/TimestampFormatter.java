@@ -0,0 +1,164 @@
+package com.kisline.processors.bitcoin;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+
+// epoch seconds 를 ISO-8601 문자열로 char[] 에 바로 쓴다. row 마다 Instant / ZonedDateTime / String 을
+// 만들지 않는다. sink 마다 하나씩 만들어 쓰고 thread 간에 공유하지 않는다.
+// - zone offset 은 transition 사이 구간마다 한 번만 ZoneRules 에 묻는다.
+// - 날짜 부분(yyyy-MM-dd)은 날이 바뀔 때만 다시 쓴다. (분 단위 bar 는 1440 개가 같은 날짜)
+final class TimestampFormatter {
+
+  enum Style {
+    OFFSET, // DateTimeFormatter.ISO_OFFSET_DATE_TIME : 2011-12-31T07:52:00Z
+    ZONED // ZonedDateTime.toString() : 2011-12-31T07:52Z[UTC] (초가 0 이면 생략)
+  }
+
+  private static final int SECONDS_PER_DAY = 86400;
+  // 0000-03-01 부터 1970-01-01 까지의 일 수 (LocalDate.ofEpochDay 와 같은 계산)
+  private static final long DAYS_0000_TO_1970 = 719528;
+  private static final int DAYS_PER_CYCLE = 146097;
+
+  private final ZoneId zone;
+  private final ZoneRules rules;
+  private final Style style;
+  // ZONED 에서 zone 이 offset 이 아니면 붙는 [region]
+  private final char[] region;
+  private final char[] buffer;
+
+  // offset 이 유효한 구간 [offsetFrom, offsetUntil)
+  private long offsetFrom = Long.MAX_VALUE;
+  private long offsetUntil = Long.MIN_VALUE;
+  private int offsetSeconds;
+  private char[] offsetText;
+
+  // buffer 앞 11 자 (yyyy-MM-ddT) 에 쓰여 있는 local epoch day
+  private long cachedDay = Long.MIN_VALUE;
+
+  TimestampFormatter(final ZoneId zone, final Style style) {
+    this.zone = zone;
+    this.rules = zone.getRules();
+    this.style = style;
+    this.region =
+        style == Style.ZONED && !(zone instanceof ZoneOffset)
+            ? ("[" + zone.getId() + "]").toCharArray()
+            : new char[0];
+    // 날짜 + 시각 19 자, offset 최대 9 자 (+HH:MM:SS), 범위 밖 연도는 JDK 표기를 그대로 쓴다.
+    this.buffer = new char[64 + region.length];
+  }
+
+  // 결과는 getBuffer() 의 [0, 반환값) 에 있다. 다음 호출 전까지만 유효하다.
+  int format(final long epochSecond) {
+    if (epochSecond < offsetFrom || epochSecond >= offsetUntil) {
+      updateOffset(epochSecond);
+    }
+
+    final long local = epochSecond + offsetSeconds;
+    final long day = Math.floorDiv(local, SECONDS_PER_DAY);
+    if (day != cachedDay && !writeDate(day)) {
+      return formatSlow(epochSecond);
+    }
+
+    final int secondOfDay = (int) Math.floorMod(local, SECONDS_PER_DAY);
+    final int second = secondOfDay % 60;
+    int pos = 11;
+    pos = writeTwoDigits(secondOfDay / 3600, pos);
+    buffer[pos++] = ':';
+    pos = writeTwoDigits(secondOfDay / 60 % 60, pos);
+    if (style == Style.OFFSET || second != 0) {
+      buffer[pos++] = ':';
+      pos = writeTwoDigits(second, pos);
+    }
+    System.arraycopy(offsetText, 0, buffer, pos, offsetText.length);
+    pos += offsetText.length;
+    System.arraycopy(region, 0, buffer, pos, region.length);
+    return pos + region.length;
+  }
+
+  char[] getBuffer() {
+    return buffer;
+  }
+
+  // 결과를 String 으로 (TimestampFormatterTest 에서 JDK 출력과 비교)
+  String toText(final long epochSecond) {
+    return new String(buffer, 0, format(epochSecond));
+  }
+
+  // timestamp 는 보통 오름차순이므로 다음 transition 까지를 구간으로 잡는다.
+  private void updateOffset(final long epochSecond) {
+    final Instant instant = Instant.ofEpochSecond(epochSecond);
+    final ZoneOffset offset = rules.getOffset(instant);
+    if (rules.isFixedOffset()) {
+      offsetFrom = Long.MIN_VALUE;
+      offsetUntil = Long.MAX_VALUE;
+    } else {
+      final ZoneOffsetTransition next = rules.nextTransition(instant);
+      offsetFrom = epochSecond;
+      offsetUntil = next == null ? Long.MAX_VALUE : next.toEpochSecond();
+    }
+    if (offsetText == null || offset.getTotalSeconds() != offsetSeconds) {
+      offsetSeconds = offset.getTotalSeconds();
+      // "Z" 또는 "+09:00" : ISO_OFFSET_DATE_TIME 과 ZoneOffset.toString() 이 같다.
+      offsetText = offset.getId().toCharArray();
+    }
+  }
+
+  // 0000 ~ 9999 년만 직접 쓴다. 범위 밖이면 false
+  private boolean writeDate(final long epochDay) {
+    long zeroDay = epochDay + DAYS_0000_TO_1970 - 60;
+    long adjust = 0;
+    if (zeroDay < 0) {
+      final long adjustCycles = (zeroDay + 1) / DAYS_PER_CYCLE - 1;
+      adjust = adjustCycles * 400;
+      zeroDay += -adjustCycles * DAYS_PER_CYCLE;
+    }
+    long yearEst = (400 * zeroDay + 591) / DAYS_PER_CYCLE;
+    long dayOfYearEst = zeroDay - (365 * yearEst + yearEst / 4 - yearEst / 100 + yearEst / 400);
+    if (dayOfYearEst < 0) {
+      yearEst--;
+      dayOfYearEst = zeroDay - (365 * yearEst + yearEst / 4 - yearEst / 100 + yearEst / 400);
+    }
+    yearEst += adjust;
+    final int marchDayOfYear = (int) dayOfYearEst;
+    final int marchMonth = (marchDayOfYear * 5 + 2) / 153;
+    final int month = (marchMonth + 2) % 12 + 1;
+    final int dayOfMonth = marchDayOfYear - (marchMonth * 306 + 5) / 10 + 1;
+    final long year = yearEst + marchMonth / 10;
+    if (year < 0 || year > 9999) {
+      return false;
+    }
+
+    final int y = (int) year;
+    writeTwoDigits(y / 100, 0);
+    writeTwoDigits(y % 100, 2);
+    buffer[4] = '-';
+    writeTwoDigits(month, 5);
+    buffer[7] = '-';
+    writeTwoDigits(dayOfMonth, 8);
+    buffer[10] = 'T';
+    cachedDay = epochDay;
+    return true;
+  }
+
+  private int formatSlow(final long epochSecond) {
+    final ZonedDateTime time = ZonedDateTime.ofInstant(Instant.ofEpochSecond(epochSecond), zone);
+    final String text =
+        style == Style.OFFSET
+            ? DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(time)
+            : time.toString();
+    text.getChars(0, text.length(), buffer, 0);
+    cachedDay = Long.MIN_VALUE;
+    return text.length();
+  }
+
+  private int writeTwoDigits(final int value, final int pos) {
+    buffer[pos] = (char) ('0' + value / 10);
+    buffer[pos + 1] = (char) ('0' + value % 10);
+    return pos + 2;
+  }
+}
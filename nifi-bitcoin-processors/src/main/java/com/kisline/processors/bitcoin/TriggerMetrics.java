@@ -0,0 +1,82 @@
+package com.kisline.processors.bitcoin;
+
+import org.apache.nifi.processor.ProcessSession;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// input FlowFile 하나를 처리하는 동안의 건수와 단계별 시간.
+// onTrigger thread 에서만 쓴다. (async DB 의 값은 writer 가 끝난 뒤 DbWriter 에서 가져옴)
+final class TriggerMetrics {
+
+  long rowsRead;
+  long rowsValid;
+  long rowsSkipped;
+  int jsonRecords;
+  int xmlRecords;
+  int avroRecords;
+  int dbRecords;
+  int dbBatches;
+  int dbRejected;
+  int invalidRecords;
+
+  // CSV 를 읽기 시작해서 다 읽을 때까지 (parser 뒤 단계에 넘겨준 시간 포함)
+  long readNanos;
+  // parser 뒤 단계 (resampling, JSON/XML, DB 로 넘기기) 에 쓴 시간
+  long downstreamNanos;
+  long serializeNanos;
+  long dbNanos;
+
+  // NaN (빈 구간) 과 형식이 틀린 row
+  long rowsInvalid() {
+    return rowsRead - rowsValid - rowsSkipped;
+  }
+
+  long parseNanos() {
+    return Math.max(0, readNanos - downstreamNanos);
+  }
+
+  long rowsPerSecond() {
+    return readNanos > 0 ? rowsRead * TimeUnit.SECONDS.toNanos(1) / readNanos : 0;
+  }
+
+  void addDb(final DbWriter dbWriter) {
+    dbNanos += dbWriter.getNanos();
+    dbBatches += dbWriter.getBatches();
+    dbRejected += dbWriter.getRejectedRows().size();
+  }
+
+  void adjustCounters(final ProcessSession session) {
+    session.adjustCounter(ConfigUtil.RECORDS_READ, rowsRead, true);
+    session.adjustCounter(ConfigUtil.RECORDS_VALID, rowsValid, true);
+    session.adjustCounter(ConfigUtil.RECORDS_INVALID, rowsInvalid(), true);
+    session.adjustCounter(ConfigUtil.RECORDS_SKIPPED, rowsSkipped, true);
+    session.adjustCounter(ConfigUtil.JSON_RECORDS, jsonRecords, true);
+    session.adjustCounter(ConfigUtil.XML_RECORDS, xmlRecords, true);
+    session.adjustCounter(ConfigUtil.AVRO_RECORDS, avroRecords, true);
+    session.adjustCounter(ConfigUtil.DB_RECORDS, dbRecords, true);
+    session.adjustCounter(ConfigUtil.DB_BATCHES, dbBatches, true);
+    session.adjustCounter(ConfigUtil.DB_REJECTED, dbRejected, true);
+    session.adjustCounter(ConfigUtil.INVALID_RECORDS, invalidRecords, true);
+    session.adjustCounter(ConfigUtil.PARSE_MILLIS, toMillis(parseNanos()), true);
+    session.adjustCounter(ConfigUtil.SERIALIZE_MILLIS, toMillis(serializeNanos), true);
+    session.adjustCounter(ConfigUtil.DB_MILLIS, toMillis(dbNanos), true);
+  }
+
+  Map<String, String> toAttributes() {
+    final Map<String, String> attributes = new HashMap<>();
+    attributes.put(ConfigUtil.ROWS_READ_ATTRIBUTE, String.valueOf(rowsRead));
+    attributes.put(ConfigUtil.ROWS_VALID_ATTRIBUTE, String.valueOf(rowsValid));
+    attributes.put(ConfigUtil.ROWS_INVALID_ATTRIBUTE, String.valueOf(rowsInvalid()));
+    attributes.put(ConfigUtil.ROWS_PER_SECOND_ATTRIBUTE, String.valueOf(rowsPerSecond()));
+    attributes.put(ConfigUtil.PARSE_MILLIS_ATTRIBUTE, String.valueOf(toMillis(parseNanos())));
+    attributes.put(ConfigUtil.SERIALIZE_MILLIS_ATTRIBUTE, String.valueOf(toMillis(serializeNanos)));
+    attributes.put(ConfigUtil.DB_MILLIS_ATTRIBUTE, String.valueOf(toMillis(dbNanos)));
+    return attributes;
+  }
+
+  private static long toMillis(final long nanos) {
+    return TimeUnit.NANOSECONDS.toMillis(nanos);
+  }
+}
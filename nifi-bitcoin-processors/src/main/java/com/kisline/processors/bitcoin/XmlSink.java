@@ -0,0 +1,137 @@
+package com.kisline.processors.bitcoin;
+
+import org.apache.nifi.flowfile.FlowFile;
+import org.apache.nifi.processor.ProcessSession;
+import org.apache.nifi.processor.Relationship;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+// output FlowFile 하나를 StAX writer 하나로 streaming 해서 쓴다. <histories><history/>...</histories>
+// element 이름과 순서는 BitcoinHistory 의 JAXB mapping 과 같다. Marshaller 없이 batch 에서 바로 쓰므로
+// thread 간에 공유하는 상태가 없다.
+class XmlSink extends FlowFileSink {
+
+  private static final XMLOutputFactory XML_OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+
+  private final TimestampFormatter timestampFormatter;
+  private final boolean indicators;
+
+  private XMLStreamWriter writer;
+  private boolean single;
+
+  XmlSink(
+      final ProcessSession session,
+      final FlowFile parent,
+      final OutputSettings settings,
+      final String baseName,
+      final ByteArrayOutputStream buffer) {
+    super(session, parent, settings, baseName, buffer);
+    this.timestampFormatter =
+        new TimestampFormatter(settings.getZone(), TimestampFormatter.Style.ZONED);
+    this.indicators = settings.hasIndicators();
+  }
+
+  @Override
+  protected Relationship getRelationship() {
+    return ConfigUtil.XML;
+  }
+
+  @Override
+  protected String getExtension() {
+    return "xml";
+  }
+
+  @Override
+  protected String getMimeType() {
+    return ConfigUtil.XML_MIME_TYPE;
+  }
+
+  @Override
+  protected String getRecordCountAttribute() {
+    return ConfigUtil.XML_RECORDS;
+  }
+
+  @Override
+  protected void startDocument(final OutputStream out, final boolean single) throws IOException {
+    this.single = single;
+    try {
+      writer = XML_OUTPUT_FACTORY.createXMLStreamWriter(out, "UTF-8");
+      writer.writeStartDocument("UTF-8", "1.0");
+      if (!single) {
+        writer.writeStartElement(ConfigUtil.XML_ROOT_ELEMENT);
+      }
+    } catch (XMLStreamException e) {
+      throw new IOException("Could not start XML document", e);
+    }
+  }
+
+  @Override
+  protected void writeRecord(final HistoryBatch batch, final int i) throws IOException {
+    try {
+      writer.writeStartElement("history");
+      // ZonedDateTimeAdapter 와 같은 표기
+      final int length = timestampFormatter.format(batch.getTimestamp(i));
+      writer.writeStartElement("timestamp");
+      writer.writeCharacters(timestampFormatter.getBuffer(), 0, length);
+      writer.writeEndElement();
+      writeElement("open", batch.getOpen(i));
+      writeElement("close", batch.getClose(i));
+      writeElement("high", batch.getHigh(i));
+      writeElement("low", batch.getLow(i));
+      writeElement("btc-volume", batch.getBtcVolume(i));
+      writeElement("weighted-price", batch.getWeightedPrice(i));
+      writeElement("usd-volume", batch.getUsdVolume(i));
+      if (indicators) {
+        writeElement("sma", batch.getSma(i));
+        writeElement("ema", batch.getEma(i));
+        writeElement("vwap", batch.getVwap(i));
+        writeElement("volatility", batch.getVolatility(i));
+      }
+      writer.writeEndElement();
+    } catch (XMLStreamException e) {
+      throw new IOException("Could not write record to XML", e);
+    }
+  }
+
+  private void writeElement(final String name, final double value) throws XMLStreamException {
+    writeElement(name, Double.toString(value));
+  }
+
+  private void writeElement(final String name, final String value) throws XMLStreamException {
+    writer.writeStartElement(name);
+    writer.writeCharacters(value);
+    writer.writeEndElement();
+  }
+
+  @Override
+  protected void endDocument() throws IOException {
+    try {
+      if (!single) {
+        writer.writeEndElement();
+      }
+      writer.writeEndDocument();
+      writer.close();
+      writer = null;
+    } catch (XMLStreamException e) {
+      throw new IOException("Could not end XML document", e);
+    }
+  }
+
+  @Override
+  protected void flushEncoder() throws IOException {
+    if (writer == null) {
+      return;
+    }
+
+    try {
+      writer.flush();
+    } catch (XMLStreamException e) {
+      throw new IOException("Could not flush XML document", e);
+    }
+  }
+}
@@ -16,11 +16,16 @@
  */
 package com.kisline.processors.bitcoin;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.kisline.dbcp.DBCPConfigUtil;
 import com.kisline.dbcp.HikariCPService;
 import com.kisline.dbcp.StandardHikariCPService;
 import org.apache.derby.drda.NetworkServerControl;
 import org.apache.derby.jdbc.ClientDataSource;
+import org.apache.nifi.components.state.Scope;
+import org.apache.nifi.flowfile.attributes.CoreAttributes;
+import org.apache.nifi.util.MockFlowFile;
 import org.apache.nifi.util.TestRunner;
 import org.apache.nifi.util.TestRunners;
 import org.junit.AfterClass;
@@ -28,23 +33,55 @@ import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 public class BitcoinHistoryProcessorTest {
   private static final String TEST_FILE = "test.csv";
   private static final String BAD_TEST_FILE = "bad.csv";
+  private static final String MULTI_TEST_FILE = "multi.csv";
+  private static final String DB_URL = "jdbc:derby://localhost:1527/test;create=true";
   private static NetworkServerControl derby;
 
   private TestRunner testRunner;
   private Path input;
   private Path badInput;
+  private Path multiInput;
 
   @BeforeClass
   public static void start() throws Exception {
     derby = new NetworkServerControl();
     derby.start(new PrintWriter(System.out));
+
+    try (final Connection connection = openConnection();
+        final Statement stmt = connection.createStatement()) {
+      stmt.execute(
+          "create table bitcoin_history (history_time timestamp, open_price double, high double, low double, closed_price double, btc_volume double, usd_volume double, weighted_price double)");
+    } catch (SQLException e) {
+      // X0Y32 : 이전 실행에서 만든 table 이 이미 있음
+      if (!"X0Y32".equals(e.getSQLState())) {
+        throw e;
+      }
+    }
   }
 
   @AfterClass
@@ -54,6 +91,11 @@ public class BitcoinHistoryProcessorTest {
 
   @Before
   public void init() throws Exception {
+    try (final Connection connection = openConnection();
+        final Statement stmt = connection.createStatement()) {
+      stmt.executeUpdate("delete from bitcoin_history");
+    }
+
     testRunner = TestRunners.newTestRunner(BitcoinHistoryProcessor.class);
     final HikariCPService service = new StandardHikariCPService();
     testRunner.addControllerService("dbcp", service);
@@ -75,6 +117,7 @@ public class BitcoinHistoryProcessorTest {
 
     input = Paths.get(ClassLoader.getSystemResource(TEST_FILE).toURI());
     badInput = Paths.get(ClassLoader.getSystemResource(BAD_TEST_FILE).toURI());
+    multiInput = Paths.get(ClassLoader.getSystemResource(MULTI_TEST_FILE).toURI());
   }
 
   @Test
@@ -89,6 +132,7 @@ public class BitcoinHistoryProcessorTest {
 
     testRunner.assertTransferCount(ConfigUtil.JSON, 1);
     testRunner.assertTransferCount(ConfigUtil.XML, 1);
+    testRunner.assertTransferCount(ConfigUtil.DB, 1);
     testRunner.assertTransferCount(ConfigUtil.FAILURE, 0);
 
     testRunner.shutdown();
@@ -106,6 +150,7 @@ public class BitcoinHistoryProcessorTest {
 
     testRunner.assertTransferCount(ConfigUtil.JSON, 1);
     testRunner.assertTransferCount(ConfigUtil.XML, 0);
+    testRunner.assertTransferCount(ConfigUtil.DB, 0);
     testRunner.assertTransferCount(ConfigUtil.FAILURE, 0);
 
     testRunner.shutdown();
@@ -144,4 +189,797 @@ public class BitcoinHistoryProcessorTest {
 
     testRunner.shutdown();
   }
+
+  @Test
+  public void testRouteInvalidRows() throws Exception {
+    testRunner.enqueue(badInput);
+    testRunner.setProperty(ConfigUtil.OUTPUT, "ALL");
+    testRunner.setProperty(ConfigUtil.INVALID_ROW_HANDLING, "ROUTE");
+
+    testRunner.run();
+
+    testRunner.assertQueueEmpty();
+
+    testRunner.assertTransferCount(ConfigUtil.FAILURE, 0);
+    testRunner.assertTransferCount(ConfigUtil.DB, 1);
+    testRunner.assertTransferCount(ConfigUtil.INVALID, 1);
+    final MockFlowFile invalid =
+        testRunner.getFlowFilesForRelationship(ConfigUtil.INVALID).get(0);
+    invalid.assertAttributeEquals(ConfigUtil.INVALID_RECORDS, "1");
+    invalid.assertAttributeEquals(CoreAttributes.FILENAME.key(), "bad.invalid.csv");
+    invalid.assertContentEquals(
+        InvalidRowSink.HEADER
+            + "2,\"expected 8 fields but found 1\",\"23532gewgdsghw3e4ty323\"\n");
+
+    testRunner.shutdown();
+  }
+
+  @Test
+  public void testDbRejectedRows() throws Exception {
+    // 형식이 틀린 row 하나 (6 번째 line) 와 DB 가 거부하는 row 하나
+    final String csv =
+        new String(Files.readAllBytes(multiInput), StandardCharsets.UTF_8)
+            .replace("1325318100,4.40,4.45,4.40,4.42,2.0", "1325318100,4.40,4.45,4.40,4.42,-2.0")
+            .replace("1325318160,4.42,4.42", "1325318160,4.42,oops");
+    testRunner.enqueue(
+        csv.getBytes(StandardCharsets.UTF_8),
+        Collections.singletonMap(CoreAttributes.FILENAME.key(), "multi.csv"));
+    testRunner.setProperty(ConfigUtil.OUTPUT, "ALL");
+    testRunner.setProperty(ConfigUtil.OUTPUT_GRANULARITY, "FLOWFILE");
+    testRunner.setProperty(ConfigUtil.INVALID_ROW_HANDLING, "ROUTE");
+
+    try (final Connection connection = openConnection();
+        final Statement stmt = connection.createStatement()) {
+      stmt.execute(
+          "alter table bitcoin_history add constraint non_negative_volume check (btc_volume >= 0)");
+    }
+    try {
+      testRunner.run();
+    } finally {
+      try (final Connection connection = openConnection();
+          final Statement stmt = connection.createStatement()) {
+        stmt.execute("alter table bitcoin_history drop constraint non_negative_volume");
+      }
+    }
+
+    testRunner.assertTransferCount(ConfigUtil.FAILURE, 0);
+    testRunner
+        .getFlowFilesForRelationship(ConfigUtil.JSON)
+        .get(0)
+        .assertAttributeEquals(ConfigUtil.JSON_RECORDS, "5");
+    assertEquals(4, countDbRows());
+    assertEquals(1, testRunner.getCounterValue(ConfigUtil.DB_REJECTED).longValue());
+
+    testRunner.assertTransferCount(ConfigUtil.INVALID, 1);
+    final MockFlowFile invalid =
+        testRunner.getFlowFilesForRelationship(ConfigUtil.INVALID).get(0);
+    invalid.assertAttributeEquals(ConfigUtil.INVALID_RECORDS, "2");
+    final String[] lines = new String(invalid.toByteArray(), StandardCharsets.UTF_8).split("\n");
+    assertEquals(3, lines.length);
+    assertTrue(lines[1].startsWith("6,\"invalid High\","));
+    // DB 가 거부한 row 는 line 번호 없이 SQLSTATE 와 다시 쓴 row
+    assertTrue(lines[2].startsWith(",\"23513 "));
+    assertTrue(lines[2].endsWith(",\"1325318100,4.4,4.45,4.4,4.42,-2.0,8.84,4.42\""));
+
+    testRunner.shutdown();
+  }
+
+  @Test
+  public void testDbOnlyOutput() throws Exception {
+    testRunner.enqueue(input);
+    testRunner.setClustered(true);
+    testRunner.setProperty(ConfigUtil.OUTPUT, "DB");
+    testRunner.setProperty(ConfigUtil.BATCH_SIZE, "1");
+
+    testRunner.run();
+
+    testRunner.assertQueueEmpty();
+
+    testRunner.assertTransferCount(ConfigUtil.JSON, 0);
+    testRunner.assertTransferCount(ConfigUtil.XML, 0);
+    testRunner.assertTransferCount(ConfigUtil.FAILURE, 0);
+    assertEquals(1, countDbRows());
+
+    // content 없이 attribute 만 있는 summary
+    testRunner.assertTransferCount(ConfigUtil.DB, 1);
+    final MockFlowFile summary = testRunner.getFlowFilesForRelationship(ConfigUtil.DB).get(0);
+    summary.assertAttributeEquals(ConfigUtil.DB_RECORDS, "1");
+    summary.assertAttributeEquals(ConfigUtil.ROWS_VALID_ATTRIBUTE, "1");
+    assertEquals(0, summary.getSize());
+
+    testRunner.shutdown();
+  }
+
+  @Test
+  public void testFilenameWithoutExtension() throws Exception {
+    testRunner.enqueue(input, Collections.singletonMap(CoreAttributes.FILENAME.key(), "history"));
+    testRunner.setProperty(ConfigUtil.OUTPUT, "DB");
+
+    testRunner.run();
+
+    testRunner.assertTransferCount(ConfigUtil.FAILURE, 0);
+    assertEquals(1, countDbRows());
+    testRunner
+        .getFlowFilesForRelationship(ConfigUtil.DB)
+        .get(0)
+        .assertAttributeEquals(CoreAttributes.FILENAME.key(), "history.db");
+
+    testRunner.shutdown();
+  }
+
+  @Test
+  public void testConcurrentDbOutput() throws Exception {
+    testRunner.enqueue(input);
+    testRunner.enqueue(input);
+    testRunner.setClustered(true);
+    testRunner.setThreadCount(2);
+    testRunner.setProperty(ConfigUtil.OUTPUT, "DB");
+
+    testRunner.run(2);
+
+    testRunner.assertQueueEmpty();
+
+    testRunner.assertTransferCount(ConfigUtil.FAILURE, 0);
+    assertEquals(2, countDbRows());
+
+    testRunner.shutdown();
+  }
+
+  @Test
+  public void testJsonBatchOutput() throws Exception {
+    testRunner.enqueue(multiInput);
+    testRunner.setProperty(ConfigUtil.OUTPUT, "JSON");
+    testRunner.setProperty(ConfigUtil.OUTPUT_GRANULARITY, "BATCH");
+    testRunner.setProperty(ConfigUtil.RECORDS_PER_FLOWFILE, "4");
+
+    testRunner.run();
+
+    testRunner.assertTransferCount(ConfigUtil.JSON, 2);
+    final List<MockFlowFile> flowFiles = testRunner.getFlowFilesForRelationship(ConfigUtil.JSON);
+    flowFiles.get(0).assertAttributeEquals(ConfigUtil.JSON_RECORDS, "4");
+    flowFiles.get(1).assertAttributeEquals(ConfigUtil.JSON_RECORDS, "2");
+    assertTrue(new String(flowFiles.get(0).toByteArray(), StandardCharsets.UTF_8).startsWith("["));
+
+    testRunner.shutdown();
+  }
+
+  @Test
+  public void testNdjsonPerInputOutput() throws Exception {
+    testRunner.enqueue(multiInput);
+    testRunner.setProperty(ConfigUtil.OUTPUT, "JSON");
+    testRunner.setProperty(ConfigUtil.OUTPUT_GRANULARITY, "FLOWFILE");
+    testRunner.setProperty(ConfigUtil.JSON_FORMAT, "NDJSON");
+
+    testRunner.run();
+
+    testRunner.assertTransferCount(ConfigUtil.JSON, 1);
+    final MockFlowFile flowFile = testRunner.getFlowFilesForRelationship(ConfigUtil.JSON).get(0);
+    flowFile.assertAttributeEquals(ConfigUtil.JSON_RECORDS, "6");
+    flowFile.assertAttributeEquals(CoreAttributes.MIME_TYPE.key(), ConfigUtil.NDJSON_MIME_TYPE);
+    final String content = new String(flowFile.toByteArray(), StandardCharsets.UTF_8);
+    assertEquals(6, content.split("\n").length);
+
+    testRunner.shutdown();
+  }
+
+  @Test
+  public void testAvroOutput() throws Exception {
+    testRunner.enqueue(multiInput);
+    testRunner.setProperty(ConfigUtil.OUTPUT, "AVRO");
+    testRunner.setProperty(ConfigUtil.OUTPUT_GRANULARITY, "FLOWFILE");
+
+    testRunner.run();
+
+    testRunner.assertTransferCount(ConfigUtil.AVRO, 1);
+    testRunner.assertTransferCount(ConfigUtil.JSON, 0);
+    final MockFlowFile flowFile = testRunner.getFlowFilesForRelationship(ConfigUtil.AVRO).get(0);
+    flowFile.assertAttributeEquals(ConfigUtil.AVRO_RECORDS, "6");
+    flowFile.assertAttributeEquals(CoreAttributes.MIME_TYPE.key(), ConfigUtil.AVRO_MIME_TYPE);
+    final byte[] content = flowFile.toByteArray();
+    assertEquals("Obj\u0001", new String(content, 0, 4, StandardCharsets.US_ASCII));
+    assertTrue(new String(content, StandardCharsets.ISO_8859_1).contains(AvroSink.SCHEMA));
+
+    testRunner.shutdown();
+  }
+
+  @Test
+  public void testDefaultAvroOutput() throws Exception {
+    // Output Granularity 기본값 RECORD 여도 Avro 는 container file 하나에 여러 record
+    testRunner.enqueue(multiInput);
+    testRunner.setProperty(ConfigUtil.OUTPUT, "AVRO");
+
+    testRunner.run();
+
+    testRunner.assertTransferCount(ConfigUtil.AVRO, 1);
+    testRunner
+        .getFlowFilesForRelationship(ConfigUtil.AVRO)
+        .get(0)
+        .assertAttributeEquals(ConfigUtil.AVRO_RECORDS, "6");
+
+    testRunner.shutdown();
+  }
+
+  @Test
+  public void testGzipInput() throws Exception {
+    final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    try (final GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+      out.write(Files.readAllBytes(multiInput));
+    }
+    testRunner.enqueue(
+        compressed.toByteArray(),
+        Collections.singletonMap(CoreAttributes.FILENAME.key(), "multi.csv.gz"));
+    testRunner.setProperty(ConfigUtil.OUTPUT, "JSON");
+    testRunner.setProperty(ConfigUtil.OUTPUT_GRANULARITY, "FLOWFILE");
+
+    testRunner.run();
+
+    testRunner.assertTransferCount(ConfigUtil.JSON, 1);
+    final MockFlowFile flowFile = testRunner.getFlowFilesForRelationship(ConfigUtil.JSON).get(0);
+    flowFile.assertAttributeEquals(ConfigUtil.JSON_RECORDS, "6");
+    flowFile.assertAttributeEquals(CoreAttributes.FILENAME.key(), "multi1.json");
+
+    testRunner.shutdown();
+  }
+
+  @Test
+  public void testGzipOutput() throws Exception {
+    testRunner.enqueue(multiInput);
+    testRunner.setProperty(ConfigUtil.OUTPUT, "JSON");
+    testRunner.setProperty(ConfigUtil.OUTPUT_GRANULARITY, "FLOWFILE");
+    testRunner.setProperty(ConfigUtil.JSON_FORMAT, "NDJSON");
+    testRunner.setProperty(ConfigUtil.OUTPUT_COMPRESSION, "GZIP");
+    testRunner.setProperty(ConfigUtil.OUTPUT_COMPRESSION_LEVEL, "6");
+
+    testRunner.run();
+
+    testRunner.assertTransferCount(ConfigUtil.JSON, 1);
+    final MockFlowFile flowFile = testRunner.getFlowFilesForRelationship(ConfigUtil.JSON).get(0);
+    flowFile.assertAttributeEquals(CoreAttributes.MIME_TYPE.key(), ConfigUtil.GZIP_MIME_TYPE);
+    flowFile.assertAttributeEquals(CoreAttributes.FILENAME.key(), "multi1.ndjson.gz");
+    final ByteArrayOutputStream content = new ByteArrayOutputStream();
+    try (final GZIPInputStream in =
+        new GZIPInputStream(new ByteArrayInputStream(flowFile.toByteArray()))) {
+      final byte[] buf = new byte[8192];
+      int read;
+      while ((read = in.read(buf)) > 0) {
+        content.write(buf, 0, read);
+      }
+    }
+    assertEquals(6, content.toString("UTF-8").split("\n").length);
+
+    testRunner.shutdown();
+  }
+
+  @Test
+  public void testJsonTimeBucketOutput() throws Exception {
+    testRunner.enqueue(multiInput);
+    testRunner.setProperty(ConfigUtil.OUTPUT, "JSON");
+    testRunner.setProperty(ConfigUtil.OUTPUT_GRANULARITY, "TIME");
+    testRunner.setProperty(ConfigUtil.TIME_BUCKET, "1 hour");
+
+    testRunner.run();
+
+    testRunner.assertTransferCount(ConfigUtil.JSON, 2);
+
+    testRunner.shutdown();
+  }
+
+  @Test
+  public void testXmlPerInputOutput() throws Exception {
+    testRunner.enqueue(multiInput);
+    testRunner.enqueue(multiInput);
+    testRunner.setThreadCount(2);
+    testRunner.setProperty(ConfigUtil.OUTPUT, "XML");
+    testRunner.setProperty(ConfigUtil.OUTPUT_GRANULARITY, "FLOWFILE");
+
+    testRunner.run(2);
+
+    testRunner.assertTransferCount(ConfigUtil.XML, 2);
+    for (final MockFlowFile flowFile : testRunner.getFlowFilesForRelationship(ConfigUtil.XML)) {
+      final String content = new String(flowFile.toByteArray(), StandardCharsets.UTF_8);
+      assertTrue(content.contains("<histories>"));
+      assertEquals(6, content.split("<history>").length - 1);
+    }
+
+    testRunner.shutdown();
+  }
+
+  @Test
+  public void testOutputTimeZone() throws Exception {
+    testRunner.enqueue(multiInput);
+    testRunner.setProperty(ConfigUtil.OUTPUT, "ALL");
+    testRunner.setProperty(ConfigUtil.OUTPUT_GRANULARITY, "FLOWFILE");
+    testRunner.setProperty(ConfigUtil.OUTPUT_TIME_ZONE, "Asia/Seoul");
+
+    testRunner.run();
+
+    testRunner.assertTransferCount(ConfigUtil.JSON, 1);
+    testRunner.assertTransferCount(ConfigUtil.XML, 1);
+    final String json =
+        new String(
+            testRunner.getFlowFilesForRelationship(ConfigUtil.JSON).get(0).toByteArray(),
+            StandardCharsets.UTF_8);
+    assertTrue(json.contains("\"timestamp\":\"2011-12-31T16:52:00+09:00\""));
+    final String xml =
+        new String(
+            testRunner.getFlowFilesForRelationship(ConfigUtil.XML).get(0).toByteArray(),
+            StandardCharsets.UTF_8);
+    assertTrue(xml.contains("<timestamp>2011-12-31T16:52+09:00[Asia/Seoul]</timestamp>"));
+
+    testRunner.setProperty(ConfigUtil.OUTPUT_TIME_ZONE, "Mars/Olympus_Mons");
+    testRunner.assertNotValid();
+
+    testRunner.shutdown();
+  }
+
+  @Test
+  public void testPartitionedOutput() throws Exception {
+    // multi.csv 는 UTC 2011-12-31 07 시 4 row (NaN row 제외), 08 시 2 row
+    testRunner.enqueue(multiInput);
+    testRunner.setProperty(ConfigUtil.OUTPUT, "ALL");
+    testRunner.setProperty(ConfigUtil.OUTPUT_GRANULARITY, "FLOWFILE");
+    testRunner.setProperty(ConfigUtil.OUTPUT_TIME_ZONE, "UTC");
+    testRunner.setProperty(ConfigUtil.PARTITION_BY, "HOUR");
+    testRunner.setProperty(ConfigUtil.DB_PARTITION_TABLES, "true");
+
+    try {
+      testRunner.run();
+
+      testRunner.assertTransferCount(ConfigUtil.FAILURE, 0);
+      testRunner.assertTransferCount(ConfigUtil.JSON, 2);
+      testRunner.assertTransferCount(ConfigUtil.XML, 2);
+      final MockFlowFile first = testRunner.getFlowFilesForRelationship(ConfigUtil.JSON).get(0);
+      first.assertAttributeEquals(ConfigUtil.PARTITION_KEY, "2011-12-31T07");
+      first.assertAttributeEquals(ConfigUtil.PARTITION_PATH, "year=2011/month=12/day=31/hour=07");
+      first.assertAttributeEquals(ConfigUtil.PARTITION_START, "2011-12-31T07:00Z");
+      first.assertAttributeEquals(ConfigUtil.JSON_RECORDS, "4");
+      final MockFlowFile second = testRunner.getFlowFilesForRelationship(ConfigUtil.JSON).get(1);
+      second.assertAttributeEquals(ConfigUtil.PARTITION_KEY, "2011-12-31T08");
+      second.assertAttributeEquals(ConfigUtil.PARTITION_HOUR, "08");
+      second.assertAttributeEquals(ConfigUtil.JSON_RECORDS, "2");
+
+      assertEquals(0, countDbRows());
+      assertEquals(4, countDbRows("bitcoin_history_2011123107"));
+      assertEquals(2, countDbRows("bitcoin_history_2011123108"));
+    } finally {
+      try (final Connection connection = openConnection();
+          final Statement stmt = connection.createStatement()) {
+        for (final String table :
+            new String[] {"bitcoin_history_2011123107", "bitcoin_history_2011123108"}) {
+          try {
+            stmt.execute("drop table " + table);
+          } catch (SQLException e) {
+            // 42Y55 : table 을 만들기 전에 실패함
+            if (!"42Y55".equals(e.getSQLState())) {
+              throw e;
+            }
+          }
+        }
+      }
+    }
+
+    testRunner.shutdown();
+  }
+
+  @Test
+  public void testLocalFileInput() throws Exception {
+    // ListFile 처럼 content 없이 위치만 attribute 로 넘긴다.
+    final Map<String, String> attributes = new HashMap<>();
+    attributes.put("absolute.path", multiInput.getParent().toString());
+    attributes.put(CoreAttributes.FILENAME.key(), multiInput.getFileName().toString());
+    testRunner.enqueue(new byte[0], attributes);
+    final Map<String, String> missing = new HashMap<>(attributes);
+    missing.put(CoreAttributes.FILENAME.key(), "missing.csv");
+    testRunner.enqueue(new byte[0], missing);
+    testRunner.setProperty(ConfigUtil.OUTPUT, "ALL");
+    testRunner.setProperty(ConfigUtil.OUTPUT_GRANULARITY, "FLOWFILE");
+    testRunner.setProperty(ConfigUtil.INPUT_SOURCE, "LOCAL_FILE");
+
+    testRunner.run(2);
+
+    testRunner.assertQueueEmpty();
+    testRunner.assertTransferCount(ConfigUtil.JSON, 1);
+    testRunner.assertTransferCount(ConfigUtil.XML, 1);
+    testRunner.assertTransferCount(ConfigUtil.FAILURE, 1);
+    testRunner
+        .getFlowFilesForRelationship(ConfigUtil.JSON)
+        .get(0)
+        .assertAttributeEquals(ConfigUtil.JSON_RECORDS, "6");
+    testRunner
+        .getFlowFilesForRelationship(ConfigUtil.FAILURE)
+        .get(0)
+        .assertAttributeEquals(CoreAttributes.FILENAME.key(), "missing.csv");
+    assertEquals(6, countDbRows());
+
+    testRunner.shutdown();
+  }
+
+  @Test
+  public void testOffHeapBatches() throws Exception {
+    testRunner.enqueue(multiInput);
+    testRunner.setProperty(ConfigUtil.OUTPUT, "ALL");
+    testRunner.setProperty(ConfigUtil.OUTPUT_GRANULARITY, "FLOWFILE");
+    testRunner.setProperty(ConfigUtil.OFF_HEAP_BATCHES, "true");
+
+    testRunner.run();
+
+    testRunner.assertTransferCount(ConfigUtil.JSON, 1);
+    testRunner.assertTransferCount(ConfigUtil.XML, 1);
+    testRunner
+        .getFlowFilesForRelationship(ConfigUtil.JSON)
+        .get(0)
+        .assertAttributeEquals(ConfigUtil.JSON_RECORDS, "6");
+    assertEquals(6, countDbRows());
+
+    testRunner.shutdown();
+  }
+
+  @Test
+  public void testParallelParse() throws Exception {
+    testRunner.enqueue(multiInput);
+    testRunner.setProperty(ConfigUtil.OUTPUT, "ALL");
+    testRunner.setProperty(ConfigUtil.OUTPUT_GRANULARITY, "FLOWFILE");
+    testRunner.setProperty(ConfigUtil.PARSE_PARALLELISM, "2");
+    testRunner.setProperty(ConfigUtil.PARALLEL_MIN_SIZE, "0 B");
+
+    testRunner.run();
+
+    testRunner.assertTransferCount(ConfigUtil.JSON, 1);
+    testRunner.assertTransferCount(ConfigUtil.XML, 1);
+    testRunner
+        .getFlowFilesForRelationship(ConfigUtil.JSON)
+        .get(0)
+        .assertAttributeEquals(ConfigUtil.JSON_RECORDS, "6");
+    assertEquals(6, countDbRows());
+
+    testRunner.shutdown();
+  }
+
+  @Test
+  public void testHourlyCandles() throws Exception {
+    testRunner.enqueue(multiInput);
+    testRunner.setProperty(ConfigUtil.OUTPUT, "ALL");
+    testRunner.setProperty(ConfigUtil.OUTPUT_GRANULARITY, "FLOWFILE");
+    testRunner.setProperty(ConfigUtil.CANDLE_INTERVAL, "1 hour");
+
+    testRunner.run();
+
+    testRunner
+        .getFlowFilesForRelationship(ConfigUtil.JSON)
+        .get(0)
+        .assertAttributeEquals(ConfigUtil.JSON_RECORDS, "2");
+    assertEquals(2, countDbRows());
+
+    try (final Connection connection = openConnection();
+        final Statement stmt = connection.createStatement();
+        final ResultSet rs =
+            stmt.executeQuery(
+                "select open_price, high, low, closed_price, btc_volume, usd_volume, weighted_price "
+                    + "from bitcoin_history order by history_time")) {
+      assertTrue(rs.next());
+      assertEquals(4.39, rs.getDouble(1), 1e-9);
+      assertEquals(4.45, rs.getDouble(2), 1e-9);
+      assertEquals(4.30, rs.getDouble(3), 1e-9);
+      assertEquals(4.31, rs.getDouble(4), 1e-9);
+      assertEquals(4.45558087, rs.getDouble(5), 1e-9);
+      assertEquals(19.5800000193, rs.getDouble(6), 1e-9);
+      // VWAP = usd volume 합 / btc volume 합
+      assertEquals(19.5800000193 / 4.45558087, rs.getDouble(7), 1e-9);
+
+      assertTrue(rs.next());
+      assertEquals(4.31, rs.getDouble(1), 1e-9);
+      assertEquals(4.33, rs.getDouble(4), 1e-9);
+      assertEquals(17.36 / 4.0, rs.getDouble(7), 1e-9);
+    }
+
+    testRunner.shutdown();
+  }
+
+  @Test
+  public void testRollingIndicators() throws Exception {
+    testRunner.enqueue(multiInput);
+    testRunner.setProperty(ConfigUtil.OUTPUT, "ALL");
+    testRunner.setProperty(ConfigUtil.OUTPUT_GRANULARITY, "FLOWFILE");
+    testRunner.setProperty(ConfigUtil.JSON_FORMAT, "NDJSON");
+    testRunner.setProperty(ConfigUtil.INDICATOR_WINDOW, "2");
+
+    testRunner.run();
+
+    testRunner.assertTransferCount(ConfigUtil.JSON, 1);
+    assertEquals(6, countDbRows());
+    final String[] lines =
+        new String(
+                testRunner.getFlowFilesForRelationship(ConfigUtil.JSON).get(0).toByteArray(),
+                StandardCharsets.UTF_8)
+            .split("\n");
+    assertEquals(6, lines.length);
+
+    final ObjectMapper mapper = new ObjectMapper();
+    final JsonNode first = mapper.readTree(lines[0]);
+    assertEquals(4.39, first.get("sma").asDouble(), 1e-9);
+    assertEquals(4.39, first.get("ema").asDouble(), 1e-9);
+    assertEquals(0.0, first.get("volatility").asDouble(), 1e-9);
+
+    final JsonNode second = mapper.readTree(lines[1]);
+    assertEquals((4.39 + 4.40) / 2, second.get("sma").asDouble(), 1e-9);
+    // alpha = 2 / (2 + 1)
+    assertEquals(4.39 + 2.0 / 3 * (4.40 - 4.39), second.get("ema").asDouble(), 1e-9);
+    assertEquals(
+        (2.0000000193 + 6.585) / (0.45558087 + 1.5), second.get("vwap").asDouble(), 1e-9);
+
+    // 두 log return 의 표본 표준편차
+    final JsonNode third = mapper.readTree(lines[2]);
+    assertEquals((4.40 + 4.42) / 2, third.get("sma").asDouble(), 1e-9);
+    assertEquals(
+        Math.abs(Math.log(4.40 / 4.39) - Math.log(4.42 / 4.40)) / Math.sqrt(2),
+        third.get("volatility").asDouble(),
+        1e-12);
+
+    final String xml =
+        new String(
+            testRunner.getFlowFilesForRelationship(ConfigUtil.XML).get(0).toByteArray(),
+            StandardCharsets.UTF_8);
+    assertEquals(6, xml.split("<volatility>").length - 1);
+
+    testRunner.shutdown();
+  }
+
+  @Test
+  public void testIncrementalLoad() throws Exception {
+    testRunner.setProperty(ConfigUtil.OUTPUT, "ALL");
+    testRunner.setProperty(ConfigUtil.OUTPUT_GRANULARITY, "FLOWFILE");
+    testRunner.setProperty(ConfigUtil.INCREMENTAL_LOAD, "true");
+
+    testRunner.enqueue(multiInput);
+    testRunner.run();
+    assertEquals(6, countDbRows());
+    testRunner.getStateManager().assertStateEquals("watermark", "1325321580", Scope.CLUSTER);
+
+    // 같은 export 에 새 bar 하나가 붙은 파일 -> 새 bar 만 나와야 함
+    final String updated =
+        new String(Files.readAllBytes(multiInput), StandardCharsets.UTF_8)
+            + "1325321640,4.33,4.34,4.33,4.34,1.0,4.34,4.34\n";
+    testRunner.enqueue(
+        updated.getBytes(StandardCharsets.UTF_8),
+        Collections.singletonMap(CoreAttributes.FILENAME.key(), "multi.csv"));
+    testRunner.run();
+
+    assertEquals(7, countDbRows());
+    testRunner.assertTransferCount(ConfigUtil.JSON, 2);
+    testRunner
+        .getFlowFilesForRelationship(ConfigUtil.JSON)
+        .get(1)
+        .assertAttributeEquals(ConfigUtil.JSON_RECORDS, "1");
+    testRunner.getStateManager().assertStateEquals("watermark", "1325321640", Scope.CLUSTER);
+
+    testRunner.shutdown();
+  }
+
+  @Test
+  public void testIncrementalCandles() throws Exception {
+    testRunner.setProperty(ConfigUtil.OUTPUT, "DB");
+    testRunner.setProperty(ConfigUtil.CANDLE_INTERVAL, "1 hour");
+    testRunner.setProperty(ConfigUtil.INCREMENTAL_LOAD, "true");
+
+    // 첫 export 는 08 시 candle 의 bar 하나 (08:52) 에서 끝난다.
+    final String full = new String(Files.readAllBytes(multiInput), StandardCharsets.UTF_8);
+    final String partial = full.substring(0, full.indexOf("1325321580"));
+    testRunner.enqueue(
+        partial.getBytes(StandardCharsets.UTF_8),
+        Collections.singletonMap(CoreAttributes.FILENAME.key(), "multi.csv"));
+    testRunner.run();
+
+    // 08 시 candle 은 아직 열려 있으므로 내보내지 않고 watermark 는 08:00 앞까지
+    assertEquals(1, countDbRows());
+    testRunner.getStateManager().assertStateEquals("watermark", "1325318399", Scope.CLUSTER);
+
+    // 다음 export 는 08 시의 나머지 bar 와 09 시 bar 를 가진다.
+    final String updated = full + "1325322000,4.33,4.34,4.33,4.34,1.0,4.34,4.34\n";
+    testRunner.enqueue(
+        updated.getBytes(StandardCharsets.UTF_8),
+        Collections.singletonMap(CoreAttributes.FILENAME.key(), "multi.csv"));
+    testRunner.run();
+
+    testRunner.assertTransferCount(ConfigUtil.FAILURE, 0);
+    assertEquals(2, countDbRows());
+    testRunner.getStateManager().assertStateEquals("watermark", "1325321999", Scope.CLUSTER);
+    try (final Connection connection = openConnection();
+        final Statement stmt = connection.createStatement();
+        final ResultSet rs =
+            stmt.executeQuery(
+                "select open_price, closed_price, btc_volume from bitcoin_history "
+                    + "order by history_time")) {
+      assertTrue(rs.next());
+      assertTrue(rs.next());
+      // 두 load 의 bar 를 모두 합친 08 시 candle
+      assertEquals(4.31, rs.getDouble(1), 1e-9);
+      assertEquals(4.33, rs.getDouble(2), 1e-9);
+      assertEquals(4.0, rs.getDouble(3), 1e-9);
+    }
+
+    testRunner.shutdown();
+  }
+
+  @Test
+  public void testBulkLoad() throws Exception {
+    testRunner.enqueue(multiInput);
+    testRunner.enqueue(input);
+    testRunner.setProperty(ConfigUtil.OUTPUT, "DB");
+    testRunner.setProperty(ConfigUtil.DB_LOAD_STRATEGY, "BULK");
+    // statement 당 4 row -> 4 row 짜리 statement 하나와 2 row 짜리 나머지
+    testRunner.setProperty(ConfigUtil.BATCH_SIZE, "4");
+
+    testRunner.run(2);
+
+    testRunner.assertTransferCount(ConfigUtil.FAILURE, 0);
+    assertEquals(7, countDbRows());
+
+    testRunner.shutdown();
+  }
+
+  @Test
+  public void testIgnoreDuplicates() throws Exception {
+    testRunner.setProperty(ConfigUtil.OUTPUT, "DB");
+    testRunner.setProperty(ConfigUtil.DUPLICATE_HANDLING, "IGNORE");
+
+    // 같은 schedule 안의 두 번째 FlowFile 은 cache 로 걸러진다.
+    testRunner.enqueue(multiInput);
+    testRunner.enqueue(multiInput);
+    testRunner.run(2);
+    assertEquals(6, countDbRows());
+
+    // 다시 schedule 하면 cache 가 비어 있으므로 DB 조회로 걸러진다.
+    testRunner.enqueue(multiInput);
+    testRunner.run();
+    assertEquals(6, countDbRows());
+    testRunner.assertTransferCount(ConfigUtil.FAILURE, 0);
+
+    testRunner.shutdown();
+  }
+
+  @Test
+  public void testIgnoreDuplicatesAfterRollback() throws Exception {
+    testRunner.setProperty(ConfigUtil.OUTPUT, "DB");
+    testRunner.setProperty(ConfigUtil.DUPLICATE_HANDLING, "IGNORE");
+    testRunner.setProperty(ConfigUtil.BATCH_SIZE, "2");
+    testRunner.setProperty(ConfigUtil.COMMIT_INTERVAL, "BATCH");
+
+    // 4 번째 row 가 거부되어 첫 batch (2 row) 만 commit 되고 FlowFile 은 실패한다.
+    final byte[] csv =
+        new String(Files.readAllBytes(multiInput), StandardCharsets.UTF_8)
+            .replace("1325318160,4.42,4.42,4.30,4.31,0.5", "1325318160,4.42,4.42,4.30,4.31,-0.5")
+            .getBytes(StandardCharsets.UTF_8);
+    final Map<String, String> attrs =
+        Collections.singletonMap(CoreAttributes.FILENAME.key(), "multi.csv");
+    testRunner.enqueue(csv, attrs);
+
+    try (final Connection connection = openConnection();
+        final Statement stmt = connection.createStatement()) {
+      stmt.execute(
+          "alter table bitcoin_history add constraint non_negative_volume check (btc_volume >= 0)");
+    }
+    try {
+      testRunner.run(1, false, true);
+    } finally {
+      try (final Connection connection = openConnection();
+          final Statement stmt = connection.createStatement()) {
+        stmt.execute("alter table bitcoin_history drop constraint non_negative_volume");
+      }
+    }
+    testRunner.assertTransferCount(ConfigUtil.FAILURE, 1);
+    assertEquals(2, countDbRows());
+
+    // 같은 schedule (같은 cache) 에서 다시 보내면 rollback 된 row 는 모두 들어가야 한다.
+    testRunner.enqueue(csv, attrs);
+    testRunner.run(1, true, false);
+
+    testRunner.assertTransferCount(ConfigUtil.FAILURE, 1);
+    assertEquals(6, countDbRows());
+    assertEquals(2, testRunner.getCounterValue(ConfigUtil.DB_DUPLICATES).longValue());
+
+    testRunner.shutdown();
+  }
+
+  @Test
+  public void testUpsert() throws Exception {
+    testRunner.setProperty(ConfigUtil.OUTPUT, "DB");
+    testRunner.setProperty(ConfigUtil.DUPLICATE_HANDLING, "UPSERT");
+
+    testRunner.enqueue(multiInput);
+    testRunner.run();
+
+    // 마지막 bar 의 close 만 바뀐 export
+    final String corrected =
+        new String(Files.readAllBytes(multiInput), StandardCharsets.UTF_8)
+            .replace("1325321580,4.35,4.36,4.33,4.33", "1325321580,4.35,4.36,4.33,4.36");
+    testRunner.enqueue(
+        corrected.getBytes(StandardCharsets.UTF_8),
+        Collections.singletonMap(CoreAttributes.FILENAME.key(), "multi.csv"));
+    testRunner.run();
+
+    assertEquals(6, countDbRows());
+    try (final Connection connection = openConnection();
+        final Statement stmt = connection.createStatement();
+        final ResultSet rs =
+            stmt.executeQuery(
+                "select closed_price from bitcoin_history order by history_time desc")) {
+      assertTrue(rs.next());
+      assertEquals(4.36, rs.getDouble(1), 1e-9);
+    }
+
+    testRunner.shutdown();
+  }
+
+  @Test
+  public void testAsyncDbOutput() throws Exception {
+    testRunner.enqueue(multiInput);
+    testRunner.enqueue(input);
+    testRunner.setThreadCount(2);
+    testRunner.setProperty(ConfigUtil.OUTPUT, "ALL");
+    testRunner.setProperty(ConfigUtil.ASYNC_DB_WRITES, "true");
+    testRunner.setProperty(ConfigUtil.DB_QUEUE_SIZE, "1");
+    testRunner.setProperty(ConfigUtil.BATCH_SIZE, "2");
+
+    testRunner.run(2);
+
+    testRunner.assertQueueEmpty();
+    testRunner.assertTransferCount(ConfigUtil.FAILURE, 0);
+    assertEquals(7, countDbRows());
+
+    testRunner.shutdown();
+  }
+
+  @Test
+  public void testProcessingMetrics() throws Exception {
+    testRunner.enqueue(multiInput);
+    testRunner.setProperty(ConfigUtil.OUTPUT, "ALL");
+
+    testRunner.run();
+
+    testRunner.assertTransferCount(ConfigUtil.FAILURE, 0);
+    assertEquals(7, testRunner.getCounterValue(ConfigUtil.RECORDS_READ).longValue());
+    assertEquals(6, testRunner.getCounterValue(ConfigUtil.RECORDS_VALID).longValue());
+    assertEquals(1, testRunner.getCounterValue(ConfigUtil.RECORDS_INVALID).longValue());
+    assertEquals(6, testRunner.getCounterValue(ConfigUtil.JSON_RECORDS).longValue());
+    assertEquals(6, testRunner.getCounterValue(ConfigUtil.XML_RECORDS).longValue());
+    assertEquals(6, testRunner.getCounterValue(ConfigUtil.DB_RECORDS).longValue());
+    assertEquals(1, testRunner.getCounterValue(ConfigUtil.DB_BATCHES).longValue());
+
+    testRunner.shutdown();
+  }
+
+  @Test
+  public void testFailureMetrics() throws Exception {
+    testRunner.enqueue(badInput);
+    testRunner.setProperty(ConfigUtil.OUTPUT, "JSON");
+
+    testRunner.run();
+
+    testRunner.assertTransferCount(ConfigUtil.FAILURE, 1);
+    final MockFlowFile failure =
+        testRunner.getFlowFilesForRelationship(ConfigUtil.FAILURE).get(0);
+    failure.assertAttributeEquals(ConfigUtil.ROWS_READ_ATTRIBUTE, "1");
+    failure.assertAttributeEquals(ConfigUtil.ROWS_VALID_ATTRIBUTE, "0");
+    failure.assertAttributeEquals(ConfigUtil.ROWS_INVALID_ATTRIBUTE, "1");
+    failure.assertAttributeExists(ConfigUtil.PARSE_MILLIS_ATTRIBUTE);
+
+    testRunner.shutdown();
+  }
+
+  private static Connection openConnection() throws SQLException {
+    return DriverManager.getConnection(DB_URL, "test", "test");
+  }
+
+  private static int countDbRows() throws SQLException {
+    return countDbRows("bitcoin_history");
+  }
+
+  private static int countDbRows(final String table) throws SQLException {
+    try (final Connection connection = openConnection();
+        final Statement stmt = connection.createStatement();
+        final ResultSet rs = stmt.executeQuery("select count(*) from " + table)) {
+      rs.next();
+      return rs.getInt(1);
+    }
+  }
 }
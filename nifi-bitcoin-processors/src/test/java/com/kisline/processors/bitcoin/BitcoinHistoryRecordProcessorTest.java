@@ -0,0 +1,95 @@
+package com.kisline.processors.bitcoin;
+
+import org.apache.nifi.serialization.record.MockRecordParser;
+import org.apache.nifi.serialization.record.MockRecordWriter;
+import org.apache.nifi.serialization.record.RecordFieldType;
+import org.apache.nifi.util.MockFlowFile;
+import org.apache.nifi.util.TestRunner;
+import org.apache.nifi.util.TestRunners;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+
+public class BitcoinHistoryRecordProcessorTest {
+
+  private TestRunner testRunner;
+  private MockRecordParser reader;
+
+  @Before
+  public void init() throws Exception {
+    testRunner = TestRunners.newTestRunner(BitcoinHistoryRecordProcessor.class);
+
+    reader = new MockRecordParser();
+    reader.addSchemaField("Timestamp", RecordFieldType.LONG);
+    for (int slot = 1; slot < BitstampCsvParser.COLUMNS.length; slot++) {
+      reader.addSchemaField(BitstampCsvParser.COLUMNS[slot], RecordFieldType.DOUBLE);
+    }
+    testRunner.addControllerService("reader", reader);
+    testRunner.enableControllerService(reader);
+
+    final MockRecordWriter writer = new MockRecordWriter("header", false);
+    testRunner.addControllerService("writer", writer);
+    testRunner.enableControllerService(writer);
+
+    testRunner.setProperty(ConfigUtil.RECORD_READER, "reader");
+    testRunner.setProperty(ConfigUtil.RECORD_WRITER, "writer");
+  }
+
+  @Test
+  public void testRecordOutput() throws Exception {
+    reader.addRecord(1325317920L, 4.39, 4.39, 4.39, 4.39, 0.45558087, 2.0000000193, 4.39);
+    reader.addRecord(1325317980L, 4.39, 4.40, 4.38, 4.40, 1.5, 6.585, 4.39);
+    reader.addRecord(
+        1325318040L,
+        Double.NaN,
+        Double.NaN,
+        Double.NaN,
+        Double.NaN,
+        Double.NaN,
+        Double.NaN,
+        Double.NaN);
+    testRunner.enqueue(new byte[0]);
+
+    testRunner.run();
+
+    testRunner.assertAllFlowFilesTransferred(ConfigUtil.SUCCESS, 1);
+    final MockFlowFile flowFile =
+        testRunner.getFlowFilesForRelationship(ConfigUtil.SUCCESS).get(0);
+    flowFile.assertAttributeEquals(ConfigUtil.RECORD_COUNT_ATTRIBUTE, "2");
+    // header + record 2 개
+    final String content = new String(flowFile.toByteArray(), StandardCharsets.UTF_8);
+    assertEquals(3, content.trim().split("\n").length);
+    assertEquals(3, testRunner.getCounterValue(ConfigUtil.RECORDS_READ).longValue());
+    assertEquals(1, testRunner.getCounterValue(ConfigUtil.RECORDS_INVALID).longValue());
+  }
+
+  @Test
+  public void testCandles() throws Exception {
+    reader.addRecord(1325317920L, 4.39, 4.39, 4.39, 4.39, 0.45558087, 2.0000000193, 4.39);
+    reader.addRecord(1325317980L, 4.39, 4.40, 4.38, 4.40, 1.5, 6.585, 4.39);
+    reader.addRecord(1325321520L, 4.31, 4.35, 4.31, 4.35, 3.0, 13.02, 4.34);
+    testRunner.setProperty(ConfigUtil.CANDLE_INTERVAL, "1 hour");
+    testRunner.enqueue(new byte[0]);
+
+    testRunner.run();
+
+    testRunner.assertAllFlowFilesTransferred(ConfigUtil.SUCCESS, 1);
+    testRunner
+        .getFlowFilesForRelationship(ConfigUtil.SUCCESS)
+        .get(0)
+        .assertAttributeEquals(ConfigUtil.RECORD_COUNT_ATTRIBUTE, "2");
+  }
+
+  @Test
+  public void testMissingField() throws Exception {
+    reader.addRecord(1325317920L, 4.39, null, 4.39, 4.39, 0.45558087, 2.0000000193, 4.39);
+    testRunner.enqueue(new byte[0]);
+
+    testRunner.run();
+
+    testRunner.assertAllFlowFilesTransferred(ConfigUtil.FAILURE, 1);
+  }
+}
@@ -0,0 +1,89 @@
+package com.kisline.processors.bitcoin;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+
+public class BitstampCsvParserTest {
+
+  private static BitstampCsvParser parser(final String csv) throws IOException {
+    return new BitstampCsvParser(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  @Test
+  public void testValidRow() throws Exception {
+    final BitstampCsvParser parser =
+        parser(
+            "Timestamp,Open,High,Low,Close,Volume_(BTC),Volume_(Currency),Weighted_Price\n"
+                + "1325317920,4.39,4.4,4.38,4.39,0.45558087,2.0000000193,4.39\n");
+
+    assertEquals(BitstampCsvParser.Row.VALID, parser.next());
+    assertEquals(1325317920L, parser.getTimestamp());
+    assertEquals(4.39, parser.get(BitstampCsvParser.OPEN), 0);
+    assertEquals(4.4, parser.get(BitstampCsvParser.HIGH), 0);
+    assertEquals(4.38, parser.get(BitstampCsvParser.LOW), 0);
+    assertEquals(0.45558087, parser.get(BitstampCsvParser.BTC_VOLUME), 0);
+    assertEquals(2.0000000193, parser.get(BitstampCsvParser.USD_VOLUME), 0);
+    assertEquals(BitstampCsvParser.Row.END, parser.next());
+  }
+
+  @Test
+  public void testColumnOrderFromHeader() throws Exception {
+    final BitstampCsvParser parser =
+        parser(
+            "Weighted_Price,Timestamp,Open,High,Low,Close,Volume_(BTC),Volume_(Currency)\r\n"
+                + "7.5,1325317920,1,2,3,4,5,6.25e1\r\n");
+
+    assertEquals(BitstampCsvParser.Row.VALID, parser.next());
+    assertEquals(1325317920L, parser.getTimestamp());
+    assertEquals(7.5, parser.get(BitstampCsvParser.WEIGHTED_PRICE), 0);
+    assertEquals(62.5, parser.get(BitstampCsvParser.USD_VOLUME), 0);
+  }
+
+  @Test
+  public void testWatermark() throws Exception {
+    final BitstampCsvParser parser =
+        parser(
+            "Timestamp,Open,High,Low,Close,Volume_(BTC),Volume_(Currency),Weighted_Price\n"
+                + "1325317920,4.39,4.4,4.38,4.39,1,1,1\n"
+                + "1325317980,not,parsed,when,skipped,1,1,1\n"
+                + "1325318040,4.39,4.4,4.38,4.39,1,1,1\n");
+    parser.setWatermark(1325317980L);
+
+    assertEquals(BitstampCsvParser.Row.SKIPPED, parser.next());
+    assertEquals(BitstampCsvParser.Row.SKIPPED, parser.next());
+    assertEquals(BitstampCsvParser.Row.VALID, parser.next());
+    assertEquals(1325318040L, parser.getTimestamp());
+    assertEquals(BitstampCsvParser.Row.END, parser.next());
+  }
+
+  @Test
+  public void testNanAndMalformedRows() throws Exception {
+    final BitstampCsvParser parser =
+        parser(
+            "Timestamp,Open,High,Low,Close,Volume_(BTC),Volume_(Currency),Weighted_Price\n"
+                + "1325317980,NaN,NaN,NaN,NaN,NaN,NaN,NaN\n"
+                + "\n"
+                + "23532gewgdsghw3e4ty323\n"
+                + "1325318040,4.39,abc,4.39,4.39,1,1,1");
+
+    assertEquals(BitstampCsvParser.Row.NAN, parser.next());
+    assertEquals(BitstampCsvParser.Row.MALFORMED, parser.next());
+    assertEquals(4, parser.getLineNumber());
+    assertEquals("23532gewgdsghw3e4ty323", parser.getLine());
+    assertEquals(BitstampCsvParser.Row.MALFORMED, parser.next());
+    assertEquals(5, parser.getLineNumber());
+    assertEquals("invalid High", parser.getError());
+    assertEquals("1325318040,4.39,abc,4.39,4.39,1,1,1", parser.getLine());
+    assertEquals(BitstampCsvParser.Row.END, parser.next());
+  }
+
+  @Test(expected = IOException.class)
+  public void testMissingColumn() throws Exception {
+    parser("Timestamp,Open,High,Low,Close\n1325317920,1,1,1,1\n");
+  }
+}
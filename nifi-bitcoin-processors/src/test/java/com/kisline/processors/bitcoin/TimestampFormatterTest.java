@@ -0,0 +1,88 @@
+package com.kisline.processors.bitcoin;
+
+import org.junit.Test;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+
+import static org.junit.Assert.assertEquals;
+
+public class TimestampFormatterTest {
+
+  private static final ZoneId NEW_YORK = ZoneId.of("America/New_York");
+
+  // OFFSET 은 ISO_OFFSET_DATE_TIME, ZONED 는 이전 출력 (ZonedDateTime.toString) 과 같아야 한다.
+  private static void assertSame(
+      final ZoneId zone,
+      final TimestampFormatter offset,
+      final TimestampFormatter zoned,
+      final long epochSecond) {
+    final ZonedDateTime time = ZonedDateTime.ofInstant(Instant.ofEpochSecond(epochSecond), zone);
+    assertEquals(DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(time), offset.toText(epochSecond));
+    assertEquals(time.toString(), zoned.toText(epochSecond));
+  }
+
+  private static void assertSame(final ZoneId zone, final long... epochSeconds) {
+    final TimestampFormatter offset = new TimestampFormatter(zone, TimestampFormatter.Style.OFFSET);
+    final TimestampFormatter zoned = new TimestampFormatter(zone, TimestampFormatter.Style.ZONED);
+    for (final long epochSecond : epochSeconds) {
+      assertSame(zone, offset, zoned, epochSecond);
+    }
+  }
+
+  @Test
+  public void testUtc() {
+    final TimestampFormatter formatter =
+        new TimestampFormatter(ZoneOffset.UTC, TimestampFormatter.Style.OFFSET);
+    assertEquals("2011-12-31T07:52:00Z", formatter.toText(1325317920L));
+    assertSame(ZoneOffset.UTC, 1325317920L, 1325317921L, 0L, -1L);
+    assertSame(ZoneId.of("UTC"), 1325317920L, 1325317959L);
+  }
+
+  @Test
+  public void testSeconds() {
+    final TimestampFormatter zoned =
+        new TimestampFormatter(ZoneId.of("Asia/Seoul"), TimestampFormatter.Style.ZONED);
+    // 초가 0 이면 ZonedDateTime.toString 처럼 초를 생략한다.
+    assertEquals("2011-12-31T16:52+09:00[Asia/Seoul]", zoned.toText(1325317920L));
+    assertEquals("2011-12-31T16:52:07+09:00[Asia/Seoul]", zoned.toText(1325317927L));
+    assertSame(ZoneId.of("Asia/Seoul"), 1325317920L, 1325317927L, 1325317980L);
+  }
+
+  @Test
+  public void testDayRollover() {
+    // 2011-12-31T23:59:59Z -> 2012-01-01T00:00:00Z, 윤년 2 월 말
+    assertSame(ZoneOffset.UTC, 1325375999L, 1325376000L, 1330473599L, 1330473600L, 1330560000L);
+    // 거꾸로 가도 날짜를 다시 쓴다.
+    assertSame(ZoneOffset.UTC, 1325376000L, 1325375999L);
+  }
+
+  @Test
+  public void testDaylightSavingTransitions() {
+    // 2011-03-13 07:00Z (EST -> EDT), 2011-11-06 06:00Z (EDT -> EST) 앞뒤
+    assertSame(NEW_YORK, 1300000000L, 1300001399L, 1300001400L, 1300001460L, 1300003200L);
+    assertSame(NEW_YORK, 1320555599L, 1320555600L, 1320558000L, 1320559199L, 1320559200L);
+
+    // 한 해를 순서대로 (분 단위 bar 처럼 cache 를 타는 경우)
+    final TimestampFormatter offset =
+        new TimestampFormatter(NEW_YORK, TimestampFormatter.Style.OFFSET);
+    final TimestampFormatter zoned =
+        new TimestampFormatter(NEW_YORK, TimestampFormatter.Style.ZONED);
+    for (long epochSecond = 1293840000L; epochSecond < 1325376000L; epochSecond += 607) {
+      assertSame(NEW_YORK, offset, zoned, epochSecond);
+    }
+    // 순서가 뒤집혀도 offset 구간을 다시 잡는다.
+    assertSame(NEW_YORK, offset, zoned, 1300000000L);
+  }
+
+  @Test
+  public void testYearsOutsideFastPath() {
+    // 10000-01-01T00:00:00Z 와 -0001-12-31T23:59:59Z 는 JDK 로 쓴다. 그 뒤에는 다시 직접 쓴다.
+    assertSame(ZoneOffset.UTC, 253402300799L, 253402300800L, 253402300799L);
+    assertSame(NEW_YORK, -62167219201L, -62167219200L + 86400, 1325317920L);
+    assertSame(ZoneOffset.UTC, -62167219201L, -62167219200L, 1325317920L);
+  }
+}